@@ -0,0 +1,88 @@
+package draughts;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.util.concurrent.*;
+import javax.swing.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmark of drawing the board and the opening position to an
+ * offscreen image. Runs with AWT in headless mode.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BoardViewBenchmark {
+
+    private BoardView view;
+    private BufferedImage image;
+    private Graphics2D graphics;
+    private long elapsed;
+
+    /**
+     * Sets up the view and the offscreen image.
+     *
+     * @throws Exception if the view cannot be updated on the event dispatch thread.
+     */
+    @Setup
+    public void setUp() throws Exception {
+        view = new BoardView();
+        Dimension size = view.getPreferredSize();
+        view.setSize(size);
+        SwingUtilities.invokeAndWait(() -> view.update(new DraughtsModel("bench", null).getPieces()));
+        image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
+        graphics = image.createGraphics();
+    }
+
+    /**
+     * Releases the Graphics object.
+     */
+    @TearDown
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    /**
+     * Draws one frame.
+     *
+     * @return the image drawn to.
+     */
+    @Benchmark
+    public BufferedImage paintComponent() {
+        graphics.setClip(null);
+        view.paintComponent(graphics);
+        return image;
+    }
+
+    /**
+     * Draws one frame of an animated jump, clipped to the region a frame
+     * repaints: the union of the Piece's last and current squares.
+     *
+     * @return the image drawn to.
+     */
+    @Benchmark
+    public BufferedImage animationFrame() {
+        graphics.setClip(135, 135, 54, 54);
+        view.paintComponent(graphics);
+        return image;
+    }
+
+    /**
+     * Samples the position of an animated jump for one frame,
+     * stepping through the animation a millisecond at a time.
+     *
+     * @return the sum of the x and y offsets.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int pathSample() {
+        elapsed = (elapsed + 1) % 256;
+        return BoardView.samplePath(5, false, elapsed) + BoardView.samplePath(5, true, elapsed);
+    }
+
+}
@@ -0,0 +1,57 @@
+package draughts;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmark of a turn in which a Red man jumps three White men and is
+ * crowned, so DraughtsModel.play asks for each continuation in turn.
+ * The model is rebuilt before each invocation, because the turn changes it.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JumpBenchmark {
+
+    private DraughtsModel model;
+
+    // A Player that always takes the first jump it is offered.
+    private static final Player JUMPER = new Player() {
+        public Move notify(Set<Move> validMoves) {
+            for (Move move : validMoves) {
+                if (Math.abs(move.destination.getX() - move.piece.getX()) == 2) return move;
+            }
+            return validMoves.iterator().next();
+        }
+    };
+
+    /**
+     * Sets up the triple jump position.
+     */
+    @Setup(Level.Invocation)
+    public void setUp() {
+        Set<Piece> pieces = new HashSet<Piece>();
+        pieces.add(new Piece(Colour.Red, 1, 6));
+        pieces.add(new Piece(Colour.White, 2, 5));
+        pieces.add(new Piece(Colour.White, 4, 3));
+        pieces.add(new Piece(Colour.White, 6, 1));
+        model = new DraughtsModel("bench", JUMPER, Colour.Red, pieces);
+    }
+
+    /**
+     * Plays the multi-jump.
+     *
+     * @return the Pieces left on the board.
+     */
+    @Benchmark
+    public Set<Piece> multiJump() {
+        model.turn();
+        return model.getPieces();
+    }
+
+}
@@ -0,0 +1,74 @@
+package draughts;
+
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmark of playing and taking back every Move of a middle game
+ * position with jumps and kings, by makeMove and unmakeMove on one
+ * BitBoard and by copying the BitBoard before each Move.
+ * Throughput is in make/unmake pairs per second.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MakeMoveBenchmark {
+
+    private BitBoard board;
+    private BitBoard copy;
+    private int[] moves;
+    private int count;
+
+    /**
+     * Sets up a position in which Red has jumps, a crowning and kings.
+     */
+    @Setup
+    public void setUp() {
+        int red = (1 << 5) | (1 << 14) | (1 << 17) | (1 << 21) | (1 << 26) | (1 << 30);
+        int white = (1 << 1) | (1 << 9) | (1 << 10) | (1 << 18) | (1 << 22) | (1 << 25);
+        int kings = (1 << 14) | (1 << 30) | (1 << 9);
+        board = new BitBoard(Colour.Red, red, white, kings);
+        copy = new BitBoard(board);
+        moves = new int[BitBoard.MAX_MOVES];
+        count = board.generateMoves(moves);
+    }
+
+    /**
+     * Makes and unmakes one Move.
+     *
+     * @return the key of the position, which is restored.
+     */
+    @Benchmark
+    @OperationsPerInvocation(16)
+    public long makeUnmake() {
+        long key = 0;
+        for (int i = 0; i < 16; i++) {
+            board.makeMove(moves[i % count]);
+            key ^= board.getKey();
+            board.unmakeMove();
+        }
+        return key;
+    }
+
+    /**
+     * Copies the position and plays one Move on the copy, as Engine does.
+     *
+     * @return the key of the copy.
+     */
+    @Benchmark
+    @OperationsPerInvocation(16)
+    public long copyPlay() {
+        long key = 0;
+        for (int i = 0; i < 16; i++) {
+            copy.copyFrom(board);
+            copy.play(moves[i % count]);
+            key ^= copy.getKey();
+        }
+        return key;
+    }
+
+}
@@ -0,0 +1,86 @@
+package draughts;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks of Move generation and Piece lookup from the opening position.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBenchmark {
+
+    private DraughtsModel model;
+    private BitBoard board;
+    private int[] moves;
+
+    /**
+     * Sets up the opening position.
+     */
+    @Setup
+    public void setUp() {
+        model = new DraughtsModel("bench", null);
+        board = model.toBitBoard();
+        moves = new int[BitBoard.MAX_MOVES];
+    }
+
+    /**
+     * Collects the valid Moves through DraughtsModel from the Moves it
+     * has cached for each Piece, as after a Move far from most Pieces.
+     *
+     * @return the valid Moves.
+     */
+    @Benchmark
+    public Set<Move> validMovesCached() {
+        return model.getValidMoves();
+    }
+
+    /**
+     * Generates the valid Moves through DraughtsModel with nothing cached,
+     * as at the start of a game.
+     *
+     * @return the valid Moves.
+     */
+    @Benchmark
+    public Set<Move> validMovesCold() {
+        model.clearMoveCache();
+        return model.getValidMoves();
+    }
+
+    /**
+     * Generates the valid Moves through BitBoard.
+     *
+     * @return the number of valid Moves.
+     */
+    @Benchmark
+    public int generateMoves() {
+        return board.generateMoves(moves);
+    }
+
+    /**
+     * Looks up an occupied square.
+     *
+     * @return the Piece on the square.
+     */
+    @Benchmark
+    public Piece getPieceHit() {
+        return model.getPiece(6, 5);
+    }
+
+    /**
+     * Looks up an empty square in the index of squares.
+     *
+     * @return null.
+     */
+    @Benchmark
+    public Piece getPieceMiss() {
+        return model.getPiece(3, 4);
+    }
+
+}
@@ -0,0 +1,86 @@
+package draughts;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks of writing and reading saved games.
+ * Games are written to the DraughtsSavedGames folder of the working directory.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaveGameBenchmark {
+
+    private static final String GAME_NAME = "jmh-bench";
+
+    private Set<Piece> pieces;
+    private String pieceString;
+    private BitBoard board;
+    private ByteBuffer buffer;
+
+    /**
+     * Sets up the opening position and the save folder.
+     */
+    @Setup
+    public void setUp() {
+        new File(SaveGame.SAVE_DIR).mkdirs();
+        pieces = new DraughtsModel("bench", null).getPieces();
+        pieceString = new Piece(Colour.White, 3, 4).toString();
+        board = new DraughtsModel("bench", null).toBitBoard();
+        buffer = ByteBuffer.allocate(SaveGame.RECORD_SIZE);
+    }
+
+    /**
+     * Removes the benchmark save game.
+     */
+    @TearDown
+    public void tearDown() {
+        new File(SaveGame.SAVE_DIR + "/" + GAME_NAME + SaveGame.FILE_EXT).delete();
+    }
+
+    /**
+     * Saves the opening position and loads it back.
+     *
+     * @return the loaded game.
+     */
+    @Benchmark
+    public SaveGame roundTrip() {
+        SaveGame.saveGame(GAME_NAME, Colour.Red, pieces);
+        return SaveGame.loadGame(GAME_NAME);
+    }
+
+    /**
+     * Writes the opening position as a record and reads it back,
+     * as when archiving positions.
+     *
+     * @return the position read back.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public BitBoard recordRoundTrip() {
+        buffer.clear();
+        SaveGame.writeRecord(buffer, board);
+        buffer.flip();
+        return SaveGame.readRecord(buffer);
+    }
+
+    /**
+     * Parses one line of a saved game in the text format.
+     *
+     * @return the parsed Piece.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Piece pieceValueOf() {
+        return Piece.valueOf(pieceString);
+    }
+
+}
@@ -0,0 +1,8 @@
+#!/bin/sh
+set -e
+javac -d bin/classes src/draughts/*.java
+cp res/* bin/classes
+cd bin/classes
+jar cfm ../jar/Draughts.jar ../../Manifest.txt draughts/*.class *
+cd ../jar
+java -jar Draughts.jar
@@ -0,0 +1,361 @@
+package draughts;
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.concurrent.*;
+
+/**
+ * A class to analyse every saved game in a directory tree with a
+ * fixed-depth search, streaming the results to a file.
+ * One thread walks the directories, a pool of threads reads and searches
+ * the games, and the calling thread writes the results in the order they
+ * finish. The stages are joined by bounded queues, so memory stays the
+ * same however many files there are. Files that cannot be read or are not
+ * saved games are written to an error report instead of stopping the run.
+ * A CSV line, in UTF-8, holds: file, current player, red, white and
+ * kings bitboards as unsigned integers, best Move as from-to squares,
+ * score, depth, nodes.
+ * A binary record holds the SaveGame record of the position, followed by
+ * the best Move as a short from | to << 5 (-1 if there is none) and the
+ * score as a short.
+ * Usage: Analyser directory [-depth n] [-threads n] [-hash n] [-queue n]
+ * [-format csv|binary] [-output file] [-errors file]
+ */
+
+public class Analyser {
+
+    /**
+     * The size of a binary result in bytes.
+     */
+    public static final int RESULT_SIZE = SaveGame.RECORD_SIZE + 4;
+
+    // The Path each searcher takes when there are no more files.
+    private static final Path DONE = Paths.get("");
+    // The Result each stage passes on when it has finished.
+    private static final Result END = new Result(DONE);
+
+    private final Path directory;
+    private int depth = 6;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int hashSize = 1;
+    private int queueSize = 1024;
+    private boolean binary;
+    private long files;
+    private long errors;
+
+    /**
+     * Constructs a new Analyser object.
+     *
+     * @param directory the directory holding the saved games, searched recursively.
+     */
+    public Analyser(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Sets the depth each position is searched to.
+     *
+     * @param depth the depth each position is searched to.
+     * @throws IllegalArgumentException if depth is not between 1 and Engine.MAX_DEPTH.
+     */
+    public void setDepth(int depth) {
+        if (depth < 1 || depth > Engine.MAX_DEPTH) throw new IllegalArgumentException();
+        this.depth = depth;
+    }
+
+    /**
+     * Sets the number of threads reading and searching games.
+     *
+     * @param threads the number of threads reading and searching games.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Sets the size of each thread's TranspositionTable in megabytes.
+     *
+     * @param hashSize the size of each TranspositionTable in megabytes.
+     */
+    public void setHashSize(int hashSize) {
+        this.hashSize = hashSize;
+    }
+
+    /**
+     * Sets the number of files or results each queue between the stages holds.
+     *
+     * @param queueSize the number of files or results each queue holds.
+     */
+    public void setQueueSize(int queueSize) {
+        this.queueSize = Math.max(1, queueSize);
+    }
+
+    /**
+     * Sets whether the results are written as binary records rather than CSV.
+     *
+     * @param binary true if the results are written as binary records.
+     */
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    /**
+     * Returns the number of saved games analysed by the last run.
+     *
+     * @return the number of saved games analysed.
+     */
+    public long getFiles() {
+        return files;
+    }
+
+    /**
+     * Returns the number of errors reported by the last run.
+     *
+     * @return the number of errors reported.
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Analyses every saved game under the directory.
+     *
+     * @param output the stream the results are written to.
+     * @param report the Writer each error is written to, one per line.
+     * @throws IOException if the results or errors cannot be written.
+     * @throws InterruptedException if the thread is interrupted whilst waiting for results.
+     */
+    public void analyse(OutputStream output, Writer report) throws IOException, InterruptedException {
+        files = 0;
+        errors = 0;
+        BlockingQueue<Path> paths = new ArrayBlockingQueue<Path>(queueSize);
+        BlockingQueue<Result> results = new ArrayBlockingQueue<Result>(queueSize);
+        List<Thread> stages = new ArrayList<Thread>();
+        stages.add(new Thread(() -> walk(paths, results), "analyser-walker"));
+        for (int i = 0; i < threads; i++) {
+            stages.add(new Thread(() -> search(paths, results), "analyser-" + i));
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output, 1 << 16));
+        BufferedWriter csv = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        BufferedWriter errorOut = new BufferedWriter(report);
+        ByteBuffer record = ByteBuffer.allocate(RESULT_SIZE);
+        try {
+            for (Thread stage : stages) {
+                stage.setDaemon(true);
+                stage.start();
+            }
+            if (!binary) csv.write("file,player,red,white,kings,move,score,depth,nodes\n");
+            int running = stages.size();
+            while (running > 0) {
+                Result result = results.take();
+                if (result == END) {
+                    running--;
+                } else if (result.error != null) {
+                    errors++;
+                    errorOut.write(result.file + "\t" + result.error);
+                    errorOut.newLine();
+                } else {
+                    files++;
+                    if (binary) write(out, record, result);
+                    else write(csv, result);
+                }
+            }
+        } finally {
+            for (Thread stage : stages) {
+                stage.interrupt();
+            }
+            csv.flush();
+            out.flush();
+            errorOut.flush();
+        }
+    }
+
+    // Walks the directory tree, queueing each saved game file and reporting
+    // the directories that cannot be read, then queues DONE for each searcher
+    // and END for itself, even if the walk fails.
+    // @param paths the queue of files to be analysed.
+    // @param results the queue of results, for the errors found whilst walking.
+    private void walk(BlockingQueue<Path> paths, BlockingQueue<Result> results) {
+        try {
+            try {
+                Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                        if (file.getFileName().toString().endsWith(SaveGame.FILE_EXT)) put(paths, file);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                        put(results, new Result(file, e.toString()));
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (InterruptedIOException e) {
+                // Keep the interrupt so the puts below give up at once.
+                Thread.currentThread().interrupt();
+            } catch (IOException | RuntimeException e) {
+                put(results, new Result(directory, e.toString()));
+            } finally {
+                for (int i = 0; i < threads; i++) {
+                    put(paths, DONE);
+                }
+                put(results, END);
+            }
+        } catch (InterruptedIOException e) {
+            // The run has been abandoned.
+        }
+    }
+
+    // Reads and searches the queued files until DONE is taken.
+    // @param paths the queue of files to be analysed.
+    // @param results the queue the results are added to.
+    private void search(BlockingQueue<Path> paths, BlockingQueue<Result> results) {
+        Engine engine = new Engine(new Evaluation(), new TranspositionTable(hashSize));
+        engine.setMaxDepth(depth);
+        int[] moves = new int[BitBoard.MAX_MOVES];
+        try {
+            Path file;
+            while ((file = paths.take()) != DONE) {
+                Result result = new Result(file);
+                try {
+                    result.board = SaveGame.readGame(file.toFile());
+                    int count = result.board.generateMoves(moves);
+                    if (count == 0) {
+                        result.move = -1;
+                        result.score = -Engine.MATE;
+                    } else {
+                        result.move = engine.search(result.board, moves, count);
+                        result.score = engine.getScore();
+                        result.depth = engine.getDepth();
+                        result.nodes = engine.getNodes();
+                    }
+                } catch (Exception e) {
+                    result.error = e.toString();
+                }
+                results.put(result);
+            }
+            results.put(END);
+        } catch (InterruptedException e) {
+            // The run has been abandoned.
+        }
+    }
+
+    // Adds an element to a queue, waiting for space, so that a visitor can
+    // pass on an interrupt as an IOException.
+    // @param queue the queue to add to.
+    // @param element the element to be added.
+    private static <E> void put(BlockingQueue<E> queue, E element) throws InterruptedIOException {
+        try {
+            queue.put(element);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    // Writes a result as a line of CSV.
+    // @param out the Writer to write to.
+    // @param result the result to be written.
+    private static void write(Writer out, Result result) throws IOException {
+        BitBoard board = result.board;
+        String move = result.move < 0 ? "" : BitBoard.getFrom(result.move) + "-" + BitBoard.getTo(result.move);
+        String file = result.file.toString();
+        if (file.indexOf(',') >= 0 || file.indexOf('"') >= 0 || file.indexOf('\n') >= 0) file = '"' + file.replace("\"", "\"\"") + '"';
+        out.write(file + "," + board.getCurrentPlayer() + "," + Integer.toUnsignedString(board.getRed())
+                       + "," + Integer.toUnsignedString(board.getWhite())
+                       + "," + Integer.toUnsignedString(board.getKings()) + "," + move + "," + result.score + "," + result.depth
+                       + "," + result.nodes + "\n");
+    }
+
+    // Writes a result as a binary record.
+    // @param out the stream to write to.
+    // @param record the buffer to build the record in.
+    // @param result the result to be written.
+    private static void write(DataOutputStream out, ByteBuffer record, Result result) throws IOException {
+        record.clear();
+        SaveGame.writeRecord(record, result.board);
+        int move = result.move < 0 ? -1 : BitBoard.getFrom(result.move) | (BitBoard.getTo(result.move) << 5);
+        record.putShort((short) move);
+        record.putShort((short) result.score);
+        out.write(record.array(), 0, RESULT_SIZE);
+    }
+
+    /**
+     * Analyses a directory of saved games and prints the number of files,
+     * errors and files per second.
+     *
+     * @param args the arguments provided by the user.
+     */
+    public static void main(String[] args) {
+        String usage = "Usage: Analyser directory [-depth n] [-threads n] [-hash n] [-queue n]"
+                       + " [-format csv|binary] [-output file] [-errors file]";
+        if (args.length == 0) {
+            System.err.println(usage);
+            System.exit(1);
+        }
+        Analyser analyser = new Analyser(Paths.get(args[0]));
+        String output = null;
+        String errors = "analysis-errors.txt";
+        try {
+            for (int i = 1; i + 1 < args.length; i += 2) {
+                if (args[i].equals("-depth")) analyser.setDepth(Integer.parseInt(args[i + 1]));
+                else if (args[i].equals("-threads")) analyser.setThreads(Integer.parseInt(args[i + 1]));
+                else if (args[i].equals("-hash")) analyser.setHashSize(Integer.parseInt(args[i + 1]));
+                else if (args[i].equals("-queue")) analyser.setQueueSize(Integer.parseInt(args[i + 1]));
+                else if (args[i].equals("-format")) analyser.setBinary(args[i + 1].equals("binary"));
+                else if (args[i].equals("-output")) output = args[i + 1];
+                else if (args[i].equals("-errors")) errors = args[i + 1];
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(usage);
+            System.exit(1);
+        }
+        if (output == null) output = analyser.binary ? "analysis.bin" : "analysis.csv";
+        try (OutputStream out = new FileOutputStream(output);
+             Writer report = new OutputStreamWriter(new FileOutputStream(errors), "UTF-8")) {
+            long start = System.currentTimeMillis();
+            analyser.analyse(out, report);
+            long time = Math.max(1, System.currentTimeMillis() - start);
+            System.out.println("Files: " + analyser.getFiles() + " Errors: " + analyser.getErrors()
+                               + " in " + time + "ms, " + ((analyser.getFiles() * 1000) / time)
+                               + " files per second");
+        } catch (Exception e) {
+            System.err.println("Error analysing " + args[0] + ". " + e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * The analysis of one file, or the error that stopped it.
+     */
+    private static class Result {
+
+        private final Path file;
+        private BitBoard board;
+        private int move;
+        private int score;
+        private int depth;
+        private long nodes;
+        private String error;
+
+        // Constructs a new Result object for a file.
+        // @param file the file analysed.
+        Result(Path file) {
+            this.file = file;
+        }
+
+        // Constructs a new Result object for a file that could not be analysed.
+        // @param file the file that could not be analysed.
+        // @param error the description of the error.
+        Result(Path file, String error) {
+            this.file = file;
+            this.error = error;
+        }
+
+    }
+
+}
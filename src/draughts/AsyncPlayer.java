@@ -0,0 +1,45 @@
+package draughts;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * An interface to get the Move from a Player without waiting for it.
+ * The returned future is completed when the Player has chosen, so a
+ * game waiting for a Move holds no thread. Used with GameDriver.
+ */
+
+public interface AsyncPlayer {
+
+    /**
+     * Returns a future completed with the Move selected by the Player.
+     *
+     * @param validMoves the Set of valid Moves a player can take.
+     * @return a future completed with the Move selected by the Player.
+     */
+    public CompletableFuture<Move> request(Set<Move> validMoves);
+
+    /**
+     * Returns an AsyncPlayer that asks a Player on the calling thread.
+     * Suitable for Players that choose at once, such as RandomPlayer.
+     *
+     * @param player the Player to be asked.
+     * @return an AsyncPlayer that asks a Player on the calling thread.
+     */
+    public static AsyncPlayer of(Player player) {
+        return validMoves -> CompletableFuture.completedFuture(player.notify(validMoves));
+    }
+
+    /**
+     * Returns an AsyncPlayer that asks a Player on an Executor.
+     * Suitable for Players that take time, such as ComputerPlayer.
+     *
+     * @param player the Player to be asked.
+     * @param executor the Executor to ask the Player on.
+     * @return an AsyncPlayer that asks a Player on an Executor.
+     */
+    public static AsyncPlayer of(Player player, Executor executor) {
+        return validMoves -> CompletableFuture.supplyAsync(() -> player.notify(validMoves), executor);
+    }
+
+}
@@ -0,0 +1,667 @@
+package draughts;
+
+import java.util.*;
+
+/**
+ * A class to represent the board as three 32 bit masks, one bit for
+ * each of the dark squares a Piece can stand on.
+ * Square n is at y = n / 4 and x = 2 * (n % 4) + 1 - (y % 2), so
+ * bit 0 is the square (1, 0) and bit 31 is the square (6, 7).
+ * Moves are generated by shifting and masking whole bit sets rather
+ * than probing the board one square at a time.
+ */
+
+public class BitBoard {
+
+    /**
+     * The largest number of Moves that can be available in a position.
+     */
+    public static final int MAX_MOVES = 64;
+
+    /**
+     * The largest number of Moves that can be made before being unmade.
+     */
+    public static final int MAX_UNDO = 256;
+
+    // The squares in the rows y = 0, 2, 4, 6 and y = 1, 3, 5, 7.
+    private static final int EVEN_ROWS = 0x0F0F0F0F;
+    private static final int ODD_ROWS = 0xF0F0F0F0;
+    // The squares with x = 0 and x = 7.
+    private static final int LEFT_EDGE = 0x10101010;
+    private static final int RIGHT_EDGE = 0x08080808;
+    // The rows on which Red and White Pieces become kings.
+    private static final int RED_KINGS_ROW = 0x0000000F;
+    private static final int WHITE_KINGS_ROW = 0xF0000000;
+
+    // The layout of a packed Move.
+    private static final int SQUARE_MASK = 0x1F;
+    private static final int TO_SHIFT = 5;
+    private static final int CAPTURED_SHIFT = 10;
+    private static final int JUMP_FLAG = 1 << 15;
+    private static final int PROMOTION_FLAG = 1 << 16;
+    // The flags an undo record holds above its packed Move.
+    private static final int MOVE_MASK = 0xFFFF;
+    private static final int CAPTURED_KING = 1 << 16;
+    private static final int PROMOTED = 1 << 17;
+    private static final int WAS_JUMPING = 1 << 18;
+
+    private int red;
+    private int white;
+    private int kings;
+    private Colour currentPlayer;
+    private int jumping = -1;
+    private long key;
+    private int[] undo;
+    private long[] undoKeys;
+    private int undoCount;
+
+    /**
+     * Constructs a new BitBoard object from its masks.
+     *
+     * @param currentPlayer the Colour of the player to move.
+     * @param red the mask of squares holding Red Pieces.
+     * @param white the mask of squares holding White Pieces.
+     * @param kings the mask of squares holding kings of either Colour.
+     */
+    public BitBoard(Colour currentPlayer, int red, int white, int kings) {
+        this.currentPlayer = currentPlayer;
+        this.red = red;
+        this.white = white;
+        this.kings = kings;
+        key = Zobrist.hash(currentPlayer, red, white, kings, jumping);
+    }
+
+    /**
+     * Constructs a new BitBoard object from a Set of Pieces.
+     *
+     * @param currentPlayer the Colour of the player to move.
+     * @param pieces the Set of Pieces on the board.
+     * @throws IllegalArgumentException if a Piece is not on a dark square.
+     */
+    public BitBoard(Colour currentPlayer, Set<Piece> pieces) {
+        this.currentPlayer = currentPlayer;
+        for (Piece piece : pieces) {
+            int square = square(piece.getX(), piece.getY());
+            if (square < 0) throw new IllegalArgumentException();
+            int bit = 1 << square;
+            if (piece.getColour().equals(Colour.Red)) red |= bit;
+            else white |= bit;
+            if (piece.isKing()) kings |= bit;
+        }
+        key = Zobrist.hash(currentPlayer, red, white, kings, jumping);
+    }
+
+    /**
+     * Constructs a copy of a BitBoard object.
+     *
+     * @param board the BitBoard to be copied.
+     */
+    public BitBoard(BitBoard board) {
+        copyFrom(board);
+    }
+
+    /**
+     * Makes this BitBoard a copy of another without allocating.
+     * The Moves made on the other BitBoard cannot be unmade on this one.
+     *
+     * @param board the BitBoard to be copied.
+     */
+    public void copyFrom(BitBoard board) {
+        red = board.red;
+        white = board.white;
+        kings = board.kings;
+        currentPlayer = board.currentPlayer;
+        jumping = board.jumping;
+        key = board.key;
+        undoCount = 0;
+    }
+
+    /**
+     * Sets the position from its masks without allocating.
+     *
+     * @param currentPlayer the Colour of the player to move.
+     * @param red the mask of squares holding Red Pieces.
+     * @param white the mask of squares holding White Pieces.
+     * @param kings the mask of squares holding kings of either Colour.
+     */
+    public void set(Colour currentPlayer, int red, int white, int kings) {
+        this.currentPlayer = currentPlayer;
+        this.red = red;
+        this.white = white;
+        this.kings = kings;
+        jumping = -1;
+        key = Zobrist.hash(currentPlayer, red, white, kings, jumping);
+        undoCount = 0;
+    }
+
+    /**
+     * Returns the square index of the coordinates, or -1 if the
+     * coordinates are not a dark square on the board.
+     *
+     * @param x the x coordinate of the square.
+     * @param y the y coordinate of the square.
+     * @return the square index of the coordinates.
+     */
+    public static int square(int x, int y) {
+        if (0 > x || x > 7 || 0 > y || y > 7 || ((x + y) & 1) == 0) return -1;
+        return (y << 2) | (x >> 1);
+    }
+
+    /**
+     * Returns the x coordinate of a square.
+     *
+     * @param square the square index.
+     * @return the x coordinate of the square.
+     */
+    public static int getX(int square) {
+        return (((square & 3) << 1) + 1) - ((square >> 2) & 1);
+    }
+
+    /**
+     * Returns the y coordinate of a square.
+     *
+     * @param square the square index.
+     * @return the y coordinate of the square.
+     */
+    public static int getY(int square) {
+        return square >> 2;
+    }
+
+    /**
+     * Returns a packed simple Move.
+     *
+     * @param from the square the Piece moves from.
+     * @param to the square the Piece moves to.
+     * @return the packed Move.
+     */
+    public static int createMove(int from, int to) {
+        return from | (to << TO_SHIFT);
+    }
+
+    /**
+     * Returns a packed jump Move.
+     *
+     * @param from the square the Piece moves from.
+     * @param to the square the Piece moves to.
+     * @param captured the square of the Piece jumped over.
+     * @return the packed Move.
+     */
+    public static int createJump(int from, int to, int captured) {
+        return from | (to << TO_SHIFT) | (captured << CAPTURED_SHIFT) | JUMP_FLAG;
+    }
+
+    /**
+     * Returns the square a packed Move starts from.
+     *
+     * @param move the packed Move.
+     * @return the square the Move starts from.
+     */
+    public static int getFrom(int move) {
+        return move & SQUARE_MASK;
+    }
+
+    /**
+     * Returns the square a packed Move ends on.
+     *
+     * @param move the packed Move.
+     * @return the square the Move ends on.
+     */
+    public static int getTo(int move) {
+        return (move >>> TO_SHIFT) & SQUARE_MASK;
+    }
+
+    /**
+     * Returns the square of the Piece captured by a packed Move.
+     *
+     * @param move the packed Move.
+     * @return the captured square, or -1 if the Move is not a jump.
+     */
+    public static int getCaptured(int move) {
+        if ((move & JUMP_FLAG) == 0) return -1;
+        return (move >>> CAPTURED_SHIFT) & SQUARE_MASK;
+    }
+
+    /**
+     * Returns true if a packed Move is a jump.
+     *
+     * @param move the packed Move.
+     * @return true if the Move is a jump.
+     */
+    public static boolean isJump(int move) {
+        return (move & JUMP_FLAG) != 0;
+    }
+
+    /**
+     * Returns a packed Move marked as crowning the Piece that makes it.
+     *
+     * @param move the packed Move.
+     * @return the packed Move with its promotion bit set.
+     */
+    public static int createPromotion(int move) {
+        return move | PROMOTION_FLAG;
+    }
+
+    /**
+     * Returns true if a packed Move crowns the Piece that makes it.
+     *
+     * @param move the packed Move.
+     * @return true if the Move crowns the Piece.
+     */
+    public static boolean isPromotion(int move) {
+        return (move & PROMOTION_FLAG) != 0;
+    }
+
+    // Returns a packed Move with its promotion bit set if a man makes it
+    // onto the kings row of its colour.
+    // @param move the packed Move.
+    // @param isRed true if the Piece making the Move is Red.
+    // @param isKing true if the Piece making the Move is a king.
+    // @return the packed Move.
+    private static int promote(int move, boolean isRed, boolean isKing) {
+        if (isKing || ((1 << getTo(move)) & (isRed ? RED_KINGS_ROW : WHITE_KINGS_ROW)) == 0) return move;
+        return move | PROMOTION_FLAG;
+    }
+
+    // The squares reached by moving each bit one step diagonally.
+    // Down is towards y = 7, the direction White moves in.
+    private static int downLeft(int bits) {
+        return ((bits & EVEN_ROWS) << 4) | ((bits & ODD_ROWS & ~LEFT_EDGE) << 3);
+    }
+
+    private static int downRight(int bits) {
+        return ((bits & EVEN_ROWS & ~RIGHT_EDGE) << 5) | ((bits & ODD_ROWS) << 4);
+    }
+
+    private static int upLeft(int bits) {
+        return ((bits & EVEN_ROWS) >>> 4) | ((bits & ODD_ROWS & ~LEFT_EDGE) >>> 5);
+    }
+
+    private static int upRight(int bits) {
+        return ((bits & EVEN_ROWS & ~RIGHT_EDGE) >>> 3) | ((bits & ODD_ROWS) >>> 4);
+    }
+
+    // Returns the bits moved one step in a direction.
+    // Directions 0 and 1 are up (Red forwards), 2 and 3 are down.
+    // @param direction the direction to move in.
+    // @param bits the bits to be moved.
+    // @return the bits moved one step in a direction.
+    static int step(int direction, int bits) {
+        switch (direction) {
+            case 0: return upLeft(bits);
+            case 1: return upRight(bits);
+            case 2: return downLeft(bits);
+            default: return downRight(bits);
+        }
+    }
+
+    // Returns the bits moved one step in the opposite direction.
+    // @param direction the direction to move against.
+    // @param bits the bits to be moved.
+    // @return the bits moved one step in the opposite direction.
+    private static int stepBack(int direction, int bits) {
+        return step(direction ^ 3, bits);
+    }
+
+    /**
+     * Generates the valid Moves for the current player, writing the
+     * packed Moves into an array. Nothing is allocated.
+     *
+     * @param moves the array to receive the Moves, at least MAX_MOVES long.
+     * @return the number of Moves generated.
+     */
+    public int generateMoves(int[] moves) {
+        if (jumping >= 0) return generateJumps(jumping, moves);
+        int own = own();
+        int opponent = opponent();
+        int empty = ~(red | white);
+        int count = 0;
+        boolean isRed = currentPlayer == Colour.Red;
+        int forward = isRed ? 0 : 2;
+        for (int direction = 0; direction < 4; direction++) {
+            int movers = (direction & 2) == forward ? own : own & kings;
+            if (movers == 0) continue;
+            int near = step(direction, movers);
+            for (int targets = near & empty; targets != 0; targets &= targets - 1) {
+                int to = Integer.numberOfTrailingZeros(targets);
+                int from = Integer.numberOfTrailingZeros(stepBack(direction, 1 << to));
+                moves[count++] = promote(createMove(from, to), isRed, (kings & (1 << from)) != 0);
+            }
+            for (int targets = step(direction, near & opponent) & empty; targets != 0; targets &= targets - 1) {
+                int to = Integer.numberOfTrailingZeros(targets);
+                int captured = stepBack(direction, 1 << to);
+                int from = Integer.numberOfTrailingZeros(stepBack(direction, captured));
+                moves[count++] = promote(createJump(from, to, Integer.numberOfTrailingZeros(captured)),
+                                         isRed, (kings & (1 << from)) != 0);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Generates the jumps available to the Piece on a square, writing the
+     * packed Moves into an array. Nothing is allocated.
+     *
+     * @param square the square of the jumping Piece.
+     * @param moves the array to receive the Moves.
+     * @return the number of Moves generated.
+     */
+    public int generateJumps(int square, int[] moves) {
+        int bit = 1 << square;
+        boolean isRed = (red & bit) != 0;
+        int opponent = isRed ? white : red;
+        int empty = ~(red | white);
+        int forward = isRed ? 0 : 2;
+        int count = 0;
+        for (int direction = 0; direction < 4; direction++) {
+            if ((direction & 2) != forward && (kings & bit) == 0) continue;
+            int captured = step(direction, bit) & opponent;
+            int to = step(direction, captured) & empty;
+            if (to != 0) {
+                moves[count++] = promote(createJump(square, Integer.numberOfTrailingZeros(to),
+                                                    Integer.numberOfTrailingZeros(captured)),
+                                         isRed, (kings & bit) != 0);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns true if the current player has at least one valid Move.
+     *
+     * @return true if the current player has at least one valid Move.
+     */
+    public boolean hasMoves() {
+        int own = own();
+        int empty = ~(red | white);
+        int opponent = opponent();
+        int forward = currentPlayer == Colour.Red ? 0 : 2;
+        for (int direction = 0; direction < 4; direction++) {
+            int movers = (direction & 2) == forward ? own : own & kings;
+            int near = step(direction, movers);
+            if ((near & empty) != 0 || (step(direction, near & opponent) & empty) != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of valid Moves a player would have if it
+     * were their turn, counted a whole direction at a time.
+     *
+     * @param colour the Colour of the player.
+     * @return the number of valid Moves for the player.
+     */
+    public int mobility(Colour colour) {
+        int own = colour == Colour.Red ? red : white;
+        int opponent = colour == Colour.Red ? white : red;
+        int empty = ~(red | white);
+        int forward = colour == Colour.Red ? 0 : 2;
+        int count = 0;
+        for (int direction = 0; direction < 4; direction++) {
+            int movers = (direction & 2) == forward ? own : own & kings;
+            int near = step(direction, movers);
+            count += Integer.bitCount(near & empty) + Integer.bitCount(step(direction, near & opponent) & empty);
+        }
+        return count;
+    }
+
+    /**
+     * Plays a packed Move. After a jump that can be continued, the
+     * current player stays the same and only further jumps by the
+     * same Piece are generated, as in DraughtsModel.
+     *
+     * @param move the packed Move to be played.
+     * @return true if the same player must continue jumping.
+     */
+    public boolean play(int move) {
+        int fromSquare = getFrom(move);
+        int toSquare = getTo(move);
+        int from = 1 << fromSquare;
+        int to = 1 << toSquare;
+        boolean isRed = (red & from) != 0;
+        boolean isKing = (kings & from) != 0;
+        Colour colour = isRed ? Colour.Red : Colour.White;
+        if (isRed) red ^= from | to;
+        else white ^= from | to;
+        if (isKing) kings ^= from | to;
+        key ^= Zobrist.piece(colour, isKing, fromSquare) ^ Zobrist.piece(colour, isKing, toSquare);
+        boolean jump = isJump(move);
+        if (jump) {
+            int capturedSquare = getCaptured(move);
+            int captured = 1 << capturedSquare;
+            key ^= Zobrist.piece((red & captured) != 0 ? Colour.Red : Colour.White,
+                                 (kings & captured) != 0, capturedSquare);
+            red &= ~captured;
+            white &= ~captured;
+            kings &= ~captured;
+        }
+        boolean jumpOntoKing = false;
+        if (!isKing && (to & (isRed ? RED_KINGS_ROW : WHITE_KINGS_ROW)) != 0) {
+            kings |= to;
+            key ^= Zobrist.piece(colour, false, toSquare) ^ Zobrist.piece(colour, true, toSquare);
+            jumpOntoKing = true;
+        }
+        if (jumping >= 0) key ^= Zobrist.jumping(jumping);
+        jumping = -1;
+        if (jump && !jumpOntoKing && canJump(toSquare)) {
+            jumping = toSquare;
+            key ^= Zobrist.jumping(jumping);
+            return true;
+        }
+        currentPlayer = currentPlayer == Colour.Red ? Colour.White : Colour.Red;
+        key ^= Zobrist.WHITE_TO_MOVE;
+        return false;
+    }
+
+    /**
+     * Plays a packed Move so that it can be taken back by unmakeMove.
+     * Each Move is recorded as one int on an undo stack, holding the Move,
+     * whether it captured a king, whether it crowned the Piece and whether
+     * the Piece was already jumping, alongside the key before the Move.
+     * The side to move and the jumping square before the Move follow from
+     * these, so nothing is allocated once the stack exists.
+     *
+     * @param move the packed Move to be played.
+     * @return true if the same player must continue jumping.
+     * @throws IllegalStateException if MAX_UNDO Moves have been made and not unmade.
+     */
+    public boolean makeMove(int move) {
+        if (undo == null) {
+            undo = new int[MAX_UNDO];
+            undoKeys = new long[MAX_UNDO];
+        }
+        if (undoCount == MAX_UNDO) throw new IllegalStateException();
+        undoKeys[undoCount] = key;
+        int record = move & MOVE_MASK;
+        if (isJump(move) && (kings & (1 << getCaptured(move))) != 0) record |= CAPTURED_KING;
+        if ((kings & (1 << getFrom(move))) == 0) record |= PROMOTED;
+        if (jumping >= 0) record |= WAS_JUMPING;
+        boolean continues = play(move);
+        if ((kings & (1 << getTo(move))) == 0) record &= ~PROMOTED;
+        undo[undoCount++] = record;
+        return continues;
+    }
+
+    /**
+     * Takes back the last Move made by makeMove, restoring the position
+     * and its key exactly.
+     *
+     * @throws IllegalStateException if there is no Move to take back.
+     */
+    public void unmakeMove() {
+        if (undoCount == 0) throw new IllegalStateException();
+        int record = undo[--undoCount];
+        int fromSquare = getFrom(record);
+        int toSquare = getTo(record);
+        int from = 1 << fromSquare;
+        int to = 1 << toSquare;
+        if (jumping < 0) currentPlayer = currentPlayer == Colour.Red ? Colour.White : Colour.Red;
+        jumping = (record & WAS_JUMPING) != 0 ? fromSquare : -1;
+        key = undoKeys[undoCount];
+        if ((record & PROMOTED) != 0) kings &= ~to;
+        int moved = from | to;
+        boolean isRed = (red & to) != 0;
+        if (isRed) red ^= moved;
+        else white ^= moved;
+        if ((kings & to) != 0) kings ^= moved;
+        if (isJump(record)) {
+            int captured = 1 << getCaptured(record);
+            if (isRed) white |= captured;
+            else red |= captured;
+            if ((record & CAPTURED_KING) != 0) kings |= captured;
+        }
+    }
+
+    /**
+     * Returns the number of Moves made by makeMove that can be taken back.
+     *
+     * @return the number of Moves that can be taken back.
+     */
+    public int getUndoCount() {
+        return undoCount;
+    }
+
+    // Returns true if the Piece on a square has a jump.
+    // @param square the square of the Piece.
+    // @return true if the Piece on a square has a jump.
+    private boolean canJump(int square) {
+        int bit = 1 << square;
+        boolean isRed = (red & bit) != 0;
+        int opponent = isRed ? white : red;
+        int empty = ~(red | white);
+        int forward = isRed ? 0 : 2;
+        for (int direction = 0; direction < 4; direction++) {
+            if ((direction & 2) != forward && (kings & bit) == 0) continue;
+            if ((step(direction, step(direction, bit) & opponent) & empty) != 0) return true;
+        }
+        return false;
+    }
+
+    // Returns the mask of the current players Pieces.
+    private int own() {
+        return currentPlayer == Colour.Red ? red : white;
+    }
+
+    // Returns the mask of the opponents Pieces.
+    private int opponent() {
+        return currentPlayer == Colour.Red ? white : red;
+    }
+
+    /**
+     * Returns the mask of squares holding Red Pieces.
+     *
+     * @return the mask of squares holding Red Pieces.
+     */
+    public int getRed() {
+        return red;
+    }
+
+    /**
+     * Returns the mask of squares holding White Pieces.
+     *
+     * @return the mask of squares holding White Pieces.
+     */
+    public int getWhite() {
+        return white;
+    }
+
+    /**
+     * Returns the mask of squares holding kings.
+     *
+     * @return the mask of squares holding kings.
+     */
+    public int getKings() {
+        return kings;
+    }
+
+    /**
+     * Returns the Colour of the current player.
+     *
+     * @return the Colour of the current player.
+     */
+    public Colour getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    /**
+     * Returns the square of the Piece that must continue jumping,
+     * or -1 if no jump is in progress.
+     *
+     * @return the square of the Piece that must continue jumping.
+     */
+    public int getJumping() {
+        return jumping;
+    }
+
+    /**
+     * Returns the Zobrist key of this board.
+     *
+     * @return the Zobrist key of this board.
+     */
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     * Returns a new Set of Pieces representing this board.
+     *
+     * @return a new Set of Pieces representing this board.
+     */
+    public Set<Piece> getPieces() {
+        Set<Piece> pieces = new HashSet<Piece>();
+        for (int bits = red | white; bits != 0; bits &= bits - 1) {
+            int square = Integer.numberOfTrailingZeros(bits);
+            Colour colour = (red & (1 << square)) != 0 ? Colour.Red : Colour.White;
+            Piece piece = new Piece(colour, getX(square), getY(square));
+            piece.setKing((kings & (1 << square)) != 0);
+            pieces.add(piece);
+        }
+        return pieces;
+    }
+
+    /**
+     * Returns the packed Move matching a Move, or -1 if the Move
+     * is not a single step or jump of a Piece on a dark square.
+     *
+     * @param move the Move to be packed.
+     * @return the packed Move matching a Move.
+     */
+    public static int valueOf(Move move) {
+        return valueOf(move.piece, (int) move.destination.getX(), (int) move.destination.getY());
+    }
+
+    /**
+     * Returns the packed Move of a Piece to a square, or -1 if it is not
+     * a single step or jump between dark squares. Nothing is allocated.
+     *
+     * @param piece the Piece to be moved.
+     * @param toX the x coordinate of the destination.
+     * @param toY the y coordinate of the destination.
+     * @return the packed Move, or -1.
+     */
+    public static int valueOf(Piece piece, int toX, int toY) {
+        int x = piece.getX();
+        int y = piece.getY();
+        int from = square(x, y);
+        int to = square(toX, toY);
+        if (from < 0 || to < 0) return -1;
+        int dx = toX - x;
+        int dy = toY - y;
+        int move;
+        if (Math.abs(dx) == 1 && Math.abs(dy) == 1) move = createMove(from, to);
+        else if (Math.abs(dx) == 2 && Math.abs(dy) == 2) move = createJump(from, to, square(x + (dx / 2), y + (dy / 2)));
+        else return -1;
+        return promote(move, piece.getColour() == Colour.Red, piece.isKing());
+    }
+
+    /**
+     * Returns a String representing the board.
+     *
+     * @return a String representing the board.
+     */
+    @Override
+    public String toString() {
+        return "[" + currentPlayer + ", " + Integer.toHexString(red) + ", "
+                + Integer.toHexString(white) + ", " + Integer.toHexString(kings) + "]";
+    }
+
+}
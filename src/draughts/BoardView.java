@@ -23,14 +23,64 @@ public class BoardView extends JPanel implements MouseListener {
     private static final int hBorder = 35;
     private static final int squareSize = 50;
     private static int boardSize = 8 * squareSize;
+    // The bits of a sprite index, one sprite for each kind of Piece.
+    private static final int WHITE_SPRITE = 1;
+    private static final int KING_SPRITE = 2;
+    private static final int SELECTED_SPRITE = 4;
+    // The time in milliseconds each animated Move takes.
+    private static final int ANIMATION_TIME = 250;
+    // The delay in milliseconds between animation frames, about 60 per second.
+    private static final int FRAME_DELAY = 16;
+    // The control points of the curve for each direction of a step and a jump,
+    // indexed by (jump ? 4 : 0) + (right ? 1 : 0) + (down ? 2 : 0).
+    private static final Point[][] CURVES = {
+        {new Point(0, 0), new Point(0, 0), new Point(-50, -50), new Point(-50, -50)},
+        {new Point(0, 0), new Point(0, 0), new Point(50, -50), new Point(50, -50)},
+        {new Point(0, 0), new Point(0, 0), new Point(-50, 50), new Point(-50, 50)},
+        {new Point(0, 0), new Point(0, 0), new Point(50, 50), new Point(50, 50)},
+        {new Point(0, 0), new Point(-25, -50), new Point(-50, -75), new Point(-100, -100)},
+        {new Point(0, 0), new Point(25, -50), new Point(50, -75), new Point(100, -100)},
+        {new Point(0, 0), new Point(-50, 25), new Point(-75, 50), new Point(-100, 100)},
+        {new Point(0, 0), new Point(50, 25), new Point(75, 50), new Point(100, 100)}
+    };
+    // The number of points sampled along each curve, set by the
+    // draughts.pathFrames property. Positions between samples are interpolated.
+    private static final int PATH_FRAMES = Math.max(1, Integer.getInteger("draughts.pathFrames", 64));
+    // The offsets along each curve, in pixels, at PATH_FRAMES + 1 evenly spaced times.
+    private static final int[][] PATH_X = new int[CURVES.length][PATH_FRAMES + 1];
+    private static final int[][] PATH_Y = new int[CURVES.length][PATH_FRAMES + 1];
+    // The fixed point scale of the fraction between two samples.
+    private static final int FRACTION_BITS = 8;
+
+    static {
+        for (int curve = 0; curve < CURVES.length; curve++) {
+            for (int frame = 0; frame <= PATH_FRAMES; frame++) {
+                Point point = cubicBezier(CURVES[curve][0], CURVES[curve][1], CURVES[curve][2],
+                                          CURVES[curve][3], (double) frame / PATH_FRAMES);
+                PATH_X[curve][frame] = (int) point.getX();
+                PATH_Y[curve][frame] = (int) point.getY();
+            }
+        }
+    }
+
     private BufferedImage king;
+    private BufferedImage background;
+    private BufferedImage[] sprites;
     private JLabel label;
-    private Set<Piece> pieces;
+    // The last Pieces given to update, by square, and their sprite index + 1.
+    private Piece[] owners = new Piece[64];
+    private int[] cells = new int[64];
+    // The cells drawn: cells without the Pieces waiting to be animated.
+    private int[] occupancy = new int[64];
     private ActionListener listener;
-    private Point selected = new Point(-1, -1);
-    private Piece animatedPiece;
-    private int x, y, startX, startY;
-    private Point start, destination;
+    private volatile int selectedX = -1;
+    private volatile int selectedY = -1;
+    // The Moves waiting to be animated, the first being animated. Only
+    // used on the event dispatch thread, as are the fields below.
+    private final Deque<Animation> animations = new ArrayDeque<Animation>();
+    private final javax.swing.Timer timer = new javax.swing.Timer(FRAME_DELAY, e -> nextFrame());
+    private int x, y;
+    private final FrameHistogram frameTimes = new FrameHistogram();
 
     /**
      * Constructs a new BoardView object.
@@ -38,7 +88,6 @@ public class BoardView extends JPanel implements MouseListener {
     public BoardView() {
         try {
             setPreferredSize(new Dimension(boardSize + (2 * wBorder), boardSize + (2 * hBorder)));
-            pieces = new HashSet<Piece>();
             king = ImageIO.read(this.getClass().getResource("/king.png"));
             label = new JLabel("");
             label.setForeground(new Color(49, 49, 51));
@@ -53,16 +102,52 @@ public class BoardView extends JPanel implements MouseListener {
 
     /**
      * Draws the board and pieces.
+     * The board and each kind of Piece are drawn once to images, so a
+     * frame is one copy of the board and one copy for each Piece.
      *
      * @param g0 the Graphics object to draw to.
      */
     public void paintComponent(Graphics g0) {
-        super.paintComponent(g0);
-        Graphics2D g = (Graphics2D) g0;
-        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                            RenderingHints.VALUE_ANTIALIAS_ON);
+        long begin = System.nanoTime();
+        if (background == null) createImages();
+        Rectangle clip = g0.getClipBounds();
+        if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+        g0.drawImage(background, 0, 0, null);
+        int[] cells = occupancy;
+        for (int i = 0, j = wBorder; i <= maxX; i++, j += squareSize) {
+            if (j >= clip.x + clip.width || j + squareSize <= clip.x) continue;
+            for (int k = 0, l = hBorder; k <= maxY; k++, l += squareSize) {
+                if (l >= clip.y + clip.height || l + squareSize <= clip.y) continue;
+                int cell = cells[(k * 8) + i];
+                if (cell == 0) continue;
+                int sprite = cell - 1;
+                if (i == selectedX && k == selectedY) sprite |= SELECTED_SPRITE;
+                g0.drawImage(sprites[sprite], j, l, null);
+            }
+        }
+        Animation animation = animations.peek();
+        if (animation != null) g0.drawImage(sprites[animation.sprite], x, y, null);
+        frameTimes.record(System.nanoTime() - begin);
+    }
+
+    /**
+     * Returns the histogram of the time taken to paint each frame.
+     *
+     * @return the histogram of the time taken to paint each frame.
+     */
+    public FrameHistogram getFrameTimes() {
+        return frameTimes;
+    }
+
+    // Draws the board and the sprites of the Pieces to images
+    // compatible with the screen, if there is one.
+    private void createImages() {
+        int width = boardSize + (2 * wBorder);
+        int height = boardSize + (2 * hBorder);
+        background = createImage(width, height, Transparency.OPAQUE);
+        Graphics2D g = background.createGraphics();
         g.setColor(Color.white);
-        g.fillRect(0, 0, boardSize + (2 * wBorder), boardSize + (2 * hBorder));
+        g.fillRect(0, 0, width, height);
         g.setColor(Color.green.darker().darker());
         int wInner = wBorder - 2;
         int hInner = hBorder - 2;
@@ -74,132 +159,234 @@ public class BoardView extends JPanel implements MouseListener {
                 else g.setColor(Color.green.darker().darker());
                 g.fillRect(j, l, squareSize, squareSize);
                 white = !white;
-                drawPiece(getPiece(i, k), j, l, g);
             }
             white = !white;
         }
-        drawPiece(animatedPiece, x, y, g);
+        g.dispose();
+        sprites = new BufferedImage[8];
+        for (int sprite = 0; sprite < sprites.length; sprite++) {
+            sprites[sprite] = createImage(squareSize, squareSize, Transparency.TRANSLUCENT);
+            g = sprites[sprite].createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                                RenderingHints.VALUE_ANTIALIAS_ON);
+            drawPiece(sprite, g);
+            g.dispose();
+        }
     }
 
-    // Draws a Piece.
-    // @param piece the Piece to be drawn.
-    // @param dX the x coordinate of the upper left corner of
-    // the square that will contain the Piece.
-    // @param dY the y coordinate of the upper left corner of
-    // the square that will contain the Piece.
+    // Returns an image compatible with the screen, or a plain image
+    // when there is no screen.
+    // @param width the width of the image.
+    // @param height the height of the image.
+    // @param transparency the Transparency of the image.
+    // @return an image compatible with the screen.
+    private BufferedImage createImage(int width, int height, int transparency) {
+        GraphicsConfiguration config = getGraphicsConfiguration();
+        if (config != null) return config.createCompatibleImage(width, height, transparency);
+        int type = transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        return new BufferedImage(width, height, type);
+    }
+
+    // Draws the sprite of a kind of Piece.
+    // @param sprite the index of the sprite.
     // @param g the Graphics2D object to be drawn to.
-    private void drawPiece(Piece piece, int dX, int dY, Graphics2D g) {
-        if (piece != null) {
-            g.setColor(new Color(49, 49, 51));
-            g.fillOval(dX + 6, dY + 6, squareSize - 9, squareSize - 9);
-            g.setColor(getColor(piece.getColour(), piece.getX(), piece.getY()));
-            g.fillOval(dX + 5, dY + 5, squareSize - 10, squareSize - 10);
-            if (piece.isKing()) g.drawImage(king, dX, dY, squareSize, squareSize, null);
-        }
+    private void drawPiece(int sprite, Graphics2D g) {
+        g.setColor(new Color(49, 49, 51));
+        g.fillOval(6, 6, squareSize - 9, squareSize - 9);
+        g.setColor(getColor(sprite));
+        g.fillOval(5, 5, squareSize - 10, squareSize - 10);
+        if ((sprite & KING_SPRITE) != 0) g.drawImage(king, 0, 0, squareSize, squareSize, null);
     }
 
-    // Returns the correct Color for the Piece.
-    // @param player the Colour of the current player.
-    // @param x the x coordinate of the Piece.
-    // @param y the y coordinate of the Piece.
-    // @return the correct Color for the Piece.
-    private Color getColor(Colour player, int x, int y) {
+    // Returns the correct Color for a sprite.
+    // @param sprite the index of the sprite.
+    // @return the correct Color for the sprite.
+    private Color getColor(int sprite) {
         int alpha = 255;
-        if (x == (int) selected.getX() && y == (int) selected.getY()) alpha = 200;
-        if (player.equals(Colour.Red)) return new Color(204, 0, 0, alpha);
+        if ((sprite & SELECTED_SPRITE) != 0) alpha = 200;
+        if ((sprite & WHITE_SPRITE) == 0) return new Color(204, 0, 0, alpha);
         else return new Color(255, 250, 250, alpha);
     }
 
-    // Returns the Piece with the specified coordinates.
-    // @param x the x coordinate of the Piece.
-    // @param y the y coordinate of the Piece.
-    // @return the Piece with the specified coordinates.
-    private Piece getPiece(int x, int y) {
-        for (Piece piece : pieces) {
-            if (piece.getX() == x && piece.getY() == y) return piece;
+    // Returns the index of the sprite of a Piece.
+    // @param piece the Piece to be drawn.
+    // @return the index of the sprite of the Piece.
+    private static int getSprite(Piece piece) {
+        int sprite = piece.getColour().equals(Colour.Red) ? 0 : WHITE_SPRITE;
+        if (piece.isKing()) sprite |= KING_SPRITE;
+        return sprite;
+    }
+
+    // Fills the occupancy array from the cells, leaving out the Pieces
+    // waiting to be animated, and repaints the squares that have changed.
+    private void updateOccupancy() {
+        int[] next = new int[64];
+        for (int i = 0; i < next.length; i++) {
+            if (cells[i] != 0 && !isAnimated(owners[i])) next[i] = cells[i];
         }
-        return null;
+        int[] old = occupancy;
+        occupancy = next;
+        for (int i = 0; i < next.length; i++) {
+            if (next[i] != old[i]) repaintSquare(i % 8, i / 8);
+        }
+    }
+
+    // Returns true if a Piece is waiting to be animated.
+    // @param piece the Piece to be checked.
+    // @return true if a Piece is waiting to be animated.
+    private boolean isAnimated(Piece piece) {
+        for (Animation animation : animations) {
+            if (animation.piece == piece) return true;
+        }
+        return false;
+    }
+
+    // Repaints one square of the board. Swing joins the
+    // squares repainted before the next frame into one region.
+    // @param x the x coordinate of the square.
+    // @param y the y coordinate of the square.
+    private void repaintSquare(int x, int y) {
+        if (minX <= x && x <= maxX && minY <= y && y <= maxY) {
+            repaint(wBorder + (x * squareSize), hBorder + (y * squareSize), squareSize, squareSize);
+        }
+    }
+
+    // Runs a task on the event dispatch thread, at once if already on it.
+    // @param task the task to be run.
+    private static void onEventThread(Runnable task) {
+        if (SwingUtilities.isEventDispatchThread()) task.run();
+        else SwingUtilities.invokeLater(task);
     }
 
     /**
-     * Sets the alpha of the selected Piece.
+     * Sets the alpha of the selected Piece. It can be called from any
+     * thread, as the selection is changed on the event dispatch thread.
      *
      * @param x the x coordinate of the selected Piece.
      * @param y the y coordinate of the selected Piece.
      */
     public void select(int x, int y) {
-        selected = new Point(x, y);
-        repaint();
+        onEventThread(() -> {
+            repaintSquare(selectedX, selectedY);
+            selectedX = x;
+            selectedY = y;
+            repaintSquare(x, y);
+        });
     }
 
     /**
-     * Updates the Set of Pieces.
+     * Updates the Set of Pieces. The Pieces are read at once, on the
+     * calling thread, and only the squares whose Pieces have changed
+     * are repainted.
      *
      * @param pieces the new Set of Pieces.
      */
     public void update(Set<Piece> pieces) {
-        this.pieces = pieces;
-        repaint();
+        Piece[] newOwners = new Piece[64];
+        int[] newCells = new int[64];
+        for (Piece piece : pieces) {
+            int x = piece.getX();
+            int y = piece.getY();
+            if (minX <= x && x <= maxX && minY <= y && y <= maxY) {
+                newOwners[(y * 8) + x] = piece;
+                newCells[(y * 8) + x] = getSprite(piece) + 1;
+            }
+        }
+        onEventThread(() -> {
+            owners = newOwners;
+            cells = newCells;
+            updateOccupancy();
+        });
+    }
+
+    /**
+     * Updates the Pieces from a BitBoard.
+     *
+     * @param board the BitBoard holding the position.
+     */
+    public void update(BitBoard board) {
+        update(board.getPieces());
     }
 
     /**
-     * Sets up the information required to animate a Piece.
+     * Animates a Move without waiting for the animation. The Move is read
+     * at once, so the Piece may be moved by the game straight away.
+     * Moves are animated one after another, each taking the same time
+     * however often frames are drawn.
      *
      * @param move the Move to be animated.
      */
-    public void setupAnimation(Move move) {
-        animatedPiece = move.piece;
-        startX = wBorder + (move.piece.getX() * squareSize);
-        startY = hBorder + (move.piece.getY() * squareSize);
-        x = startX;
-        y = startY;
-        pieces.remove(move.piece);
-        start = new Point(move.piece.getX(), move.piece.getY());
-        destination = move.destination;
+    public void animate(Move move) {
+        Animation animation = new Animation(move);
+        onEventThread(() -> {
+            animations.add(animation);
+            updateOccupancy();
+            if (!timer.isRunning()) {
+                x = animation.startX;
+                y = animation.startY;
+                timer.start();
+            }
+        });
     }
 
     /**
-     * Updates the information required to animate a Piece.
+     * Returns true if a Move is being animated or waiting to be.
+     * Must be called on the event dispatch thread.
      *
-     * @param t the fraction of where the animation is in
-     * relation to the start of the animation.
+     * @return true if a Move is being animated or waiting to be.
      */
-    public void updateAnimation(double t) {
-        Point point = calcBezier(t);
-        x = startX + (int) point.getX();
-        y = startY + (int) point.getY();
-        repaint();
+    public boolean isAnimating() {
+        return !animations.isEmpty();
     }
 
-    // Returns the Point containing the offset to the start coordinates.
-    // @param t the fraction of where the Point is in relation
-    // to the start and end points.
-    // @return the Point containing the offset to the start coordinates.
-    private Point calcBezier(double t) {
-        int xDiff = (int) destination.getX() - (int) start.getX();
-        int yDiff = (int) destination.getY() - (int) start.getY();
-        if (xDiff % 2 == 0) {
-            if (xDiff < 0 && yDiff < 0) {
-                return cubicBezier(new Point(0, 0), new Point(-25, -50), new Point(-50, -75), new Point(-100, -100), t);
-            } else if (xDiff > 0 && yDiff < 0) {
-                return cubicBezier(new Point(0, 0), new Point(25, -50), new Point(50, -75), new Point(100, -100), t);
-            } else if (xDiff > 0 && yDiff > 0) {
-                return cubicBezier(new Point(0, 0), new Point(50, 25), new Point(75, 50), new Point(100, 100), t);
-            } else if (xDiff < 0 && yDiff > 0) {
-                return cubicBezier(new Point(0, 0), new Point(-50, 25), new Point(-75, 50), new Point(-100, 100), t);
-            }
+    // Moves the animated Piece to where it should be at the current time,
+    // repainting its last and current squares.
+    private void nextFrame() {
+        Animation animation = animations.peek();
+        if (animation == null) {
+            timer.stop();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (animation.startTime == 0) animation.startTime = now;
+        long elapsed = Math.min(ANIMATION_TIME, now - animation.startTime);
+        int oldX = x;
+        int oldY = y;
+        x = animation.startX + samplePath(animation.curve, false, elapsed);
+        y = animation.startY + samplePath(animation.curve, true, elapsed);
+        repaint(Math.min(oldX, x), Math.min(oldY, y),
+                Math.abs(x - oldX) + squareSize, Math.abs(y - oldY) + squareSize);
+        if (elapsed < ANIMATION_TIME) return;
+        animations.poll();
+        Animation next = animations.peek();
+        if (next == null) {
+            timer.stop();
         } else {
-            if (xDiff < 0 && yDiff < 0) {
-                return cubicBezier(new Point(0, 0), new Point(0, 0), new Point(-50, -50), new Point(-50, -50), t);
-            } else if (xDiff > 0 && yDiff < 0) {
-                return cubicBezier(new Point(0, 0), new Point(0, 0), new Point(50, -50), new Point(50, -50), t);
-            } else if (xDiff > 0 && yDiff > 0) {
-                return cubicBezier(new Point(0, 0), new Point(0, 0), new Point(50, 50), new Point(50, 50), t);
-            } else if (xDiff < 0 && yDiff > 0) {
-                return cubicBezier(new Point(0, 0), new Point(0, 0), new Point(-50, 50), new Point(-50, 50), t);
-            }
+            x = next.startX;
+            y = next.startY;
         }
-        return null;
+        updateOccupancy();
+    }
+
+    /**
+     * Returns the offset along a path at a time since the start of an
+     * animation, interpolating between the two nearest samples, so that
+     * the Piece moves at the same speed however often frames are drawn.
+     * Nothing is allocated.
+     *
+     * @param curve the index of the curve of the Move's direction.
+     * @param vertical true for the y offset, false for the x offset.
+     * @param elapsed the time in milliseconds since the start of the animation.
+     * @return the offset along the path in pixels.
+     */
+    static int samplePath(int curve, boolean vertical, long elapsed) {
+        int[] path = vertical ? PATH_Y[curve] : PATH_X[curve];
+        if (elapsed <= 0) return path[0];
+        if (elapsed >= ANIMATION_TIME) return path[PATH_FRAMES];
+        long position = (elapsed * PATH_FRAMES << FRACTION_BITS) / ANIMATION_TIME;
+        int frame = (int) (position >> FRACTION_BITS);
+        int fraction = (int) (position & ((1 << FRACTION_BITS) - 1));
+        return path[frame] + (((path[frame + 1] - path[frame]) * fraction) >> FRACTION_BITS);
     }
 
     // Returns a Point containing the coordinates of the line
@@ -212,7 +399,7 @@ public class BoardView extends JPanel implements MouseListener {
     // to the start and end points.
     // @return a Point containing the coordinates of the line
     // for a certain Bezier curve.
-    private Point cubicBezier(Point p0, Point p1, Point p2, Point p3, double t) {
+    private static Point cubicBezier(Point p0, Point p1, Point p2, Point p3, double t) {
         double ti = (1 - t);
         double x = (ti * ti * ti * p0.getX()) + (3 * ti * ti * t * p1.getX())
                     + (3 * ti * t * t * p2.getX()) + (t * t * t * p3.getX());
@@ -222,20 +409,12 @@ public class BoardView extends JPanel implements MouseListener {
     }
 
     /**
-     * Resets the information required to animate a Piece.
-     */
-    public void resetAnimation() {
-        pieces.add(animatedPiece);
-        animatedPiece = null;
-    }
-
-    /**
-     * Sets the text of the JLabel in the view.
+     * Sets the text of the JLabel in the view, on the event dispatch thread.
      *
      * @param message the message to be displayed in the JLabel.
      */
     public void setText(String message) {
-        label.setText(message);
+        onEventThread(() -> label.setText(message));
     }
 
     /**
@@ -291,4 +470,31 @@ public class BoardView extends JPanel implements MouseListener {
      */
     public void mouseExited(MouseEvent e) {}
 
+
+    /**
+     * A Move to be animated, read when it was handed to the view.
+     */
+    private static class Animation {
+
+        private final Piece piece;
+        private final int sprite;
+        private final int startX;
+        private final int startY;
+        private final int curve;
+        private long startTime;
+
+        // Constructs a new Animation object.
+        // @param move the Move to be animated.
+        Animation(Move move) {
+            piece = move.piece;
+            sprite = getSprite(move.piece);
+            startX = wBorder + (move.piece.getX() * squareSize);
+            startY = hBorder + (move.piece.getY() * squareSize);
+            int xDiff = (int) move.destination.getX() - move.piece.getX();
+            int yDiff = (int) move.destination.getY() - move.piece.getY();
+            curve = (xDiff % 2 == 0 ? 4 : 0) + (xDiff > 0 ? 1 : 0) + (yDiff > 0 ? 2 : 0);
+        }
+
+    }
+
 }
@@ -0,0 +1,66 @@
+package draughts;
+
+import java.util.*;
+
+/**
+ * A ComputerPlayer that plays a Move from an OpeningBook at once when the
+ * position is in the book, and searches with its Engine otherwise.
+ */
+
+public class BookPlayer extends ComputerPlayer {
+
+    private final OpeningBook book;
+    private final Random random;
+    private int bookMoves;
+
+    /**
+     * Constructs a new BookPlayer object.
+     *
+     * @param engine the Engine used to choose Moves out of the book.
+     * @param book the OpeningBook to play from.
+     * @param seed the seed for choosing between book Moves.
+     */
+    public BookPlayer(Engine engine, OpeningBook book, long seed) {
+        super(engine);
+        this.book = book;
+        random = new Random(seed);
+    }
+
+    /**
+     * Returns the number of Moves played from the book.
+     *
+     * @return the number of Moves played from the book.
+     */
+    public int getBookMoves() {
+        return bookMoves;
+    }
+
+    /**
+     * Returns a Move from the book if the position is in it,
+     * otherwise the Move selected by the Engine.
+     *
+     * @param validMoves the Set of valid Moves the Player could take.
+     * @return the Move selected.
+     * @throws IllegalStateException if no game has been set.
+     */
+    @Override
+    public Move notify(Set<Move> validMoves) {
+        DraughtsModel model = getModel();
+        if (model == null) throw new IllegalStateException();
+        stopPondering();
+        Move[] candidates = validMoves.toArray(new Move[validMoves.size()]);
+        int[] rootMoves = new int[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            rootMoves[i] = BitBoard.valueOf(candidates[i]);
+        }
+        int move = book.choose(model.toBitBoard(), rootMoves, rootMoves.length, random);
+        for (int i = 0; move != 0 && i < candidates.length; i++) {
+            if (rootMoves[i] == move) {
+                bookMoves++;
+                return candidates[i];
+            }
+        }
+        return super.notify(validMoves);
+    }
+
+}
@@ -0,0 +1,198 @@
+package draughts;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A Player that chooses its Moves by searching with an Engine.
+ * It can ponder: whilst the opponent chooses a Move, each of the
+ * opponent's Moves is played in turn, the expected one first, and the
+ * position reached is searched with the usual limits on a background
+ * thread. If the opponent makes a Move whose search finished, its result
+ * is played at once (a ponder hit); otherwise the search starts with the
+ * TranspositionTable already holding what pondering found.
+ */
+
+public class ComputerPlayer implements Player {
+
+    private final Engine engine;
+    private DraughtsModel model;
+    private boolean verbose;
+    private final Map<Long, Integer> pondered = new ConcurrentHashMap<Long, Integer>();
+    private Thread ponderer;
+    private volatile boolean ponderStopped;
+    private int ponderHits;
+
+    /**
+     * Constructs a new ComputerPlayer object.
+     *
+     * @param engine the Engine used to choose Moves.
+     */
+    public ComputerPlayer(Engine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Sets the game this Player is choosing Moves for.
+     *
+     * @param model the game this Player is choosing Moves for.
+     */
+    @Override
+    public void setModel(DraughtsModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Returns the game this Player is choosing Moves for.
+     *
+     * @return the game this Player is choosing Moves for.
+     */
+    public DraughtsModel getModel() {
+        return model;
+    }
+
+    /**
+     * Sets whether a line describing each search is printed.
+     *
+     * @param verbose true if a line describing each search is printed.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Returns the Engine used to choose Moves.
+     *
+     * @return the Engine used to choose Moves.
+     */
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Returns the Move selected by the Engine.
+     * When DraughtsModel asks for the next jump of a multi-jump, the
+     * valid Moves are only those jumps, so the search is restricted
+     * to them.
+     *
+     * @param validMoves the Set of valid Moves the Player could take.
+     * @return the Move selected by the Engine.
+     * @throws IllegalStateException if no game has been set.
+     */
+    public Move notify(Set<Move> validMoves) {
+        if (model == null) throw new IllegalStateException();
+        stopPondering();
+        Move[] candidates = validMoves.toArray(new Move[validMoves.size()]);
+        int[] rootMoves = new int[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            rootMoves[i] = BitBoard.valueOf(candidates[i]);
+        }
+        BitBoard position = model.toBitBoard();
+        Integer hit = pondered.get(position.getKey());
+        pondered.clear();
+        for (int i = 0; hit != null && i < candidates.length; i++) {
+            if (rootMoves[i] == hit) {
+                ponderHits++;
+                if (verbose) System.out.println(model.getCurrentPlayer() + " ponder hit");
+                return candidates[i];
+            }
+        }
+        int best = engine.search(position, rootMoves, rootMoves.length);
+        if (verbose) System.out.println(model.getCurrentPlayer() + " " + engine);
+        for (int i = 0; i < candidates.length; i++) {
+            if (rootMoves[i] == best) return candidates[i];
+        }
+        return candidates[0];
+    }
+
+    /**
+     * Starts pondering on the opponent's time, stopping any earlier
+     * pondering. It returns at once; pondering stops by itself once every
+     * Move has been searched, or when stopPondering or notify is called.
+     *
+     * @param opponentMoves the Set of valid Moves the opponent could take.
+     * @throws IllegalStateException if no game has been set.
+     */
+    public void ponder(Set<Move> opponentMoves) {
+        if (model == null) throw new IllegalStateException();
+        stopPondering();
+        BitBoard position = model.toBitBoard();
+        int[] moves = new int[opponentMoves.size()];
+        int count = 0;
+        for (Move move : opponentMoves) {
+            moves[count++] = move.toPacked();
+        }
+        // The best Move stored for the position by the last search is
+        // the Move the opponent is expected to make.
+        TranspositionTable table = engine.getTable();
+        int expected = table == null ? 0 : TranspositionTable.getMove(table.probe(position.getKey()));
+        for (int i = 1; expected != 0 && i < count; i++) {
+            if (moves[i] == expected) {
+                moves[i] = moves[0];
+                moves[0] = expected;
+            }
+        }
+        ponderStopped = false;
+        ponderer = new Thread(() -> ponder(position, moves), "ComputerPlayer ponder");
+        ponderer.setDaemon(true);
+        ponderer.start();
+    }
+
+    // Searches the position reached by each of the opponent's Moves in turn,
+    // keeping the best reply of each search that finished.
+    // Moves that leave the opponent to jump again are skipped.
+    // @param position the position the opponent is to move in.
+    // @param moves the opponent's packed Moves, the expected one first.
+    private void ponder(BitBoard position, int[] moves) {
+        BitBoard board = new BitBoard(position);
+        int[] replies = new int[BitBoard.MAX_MOVES];
+        for (int move : moves) {
+            if (ponderStopped) return;
+            board.copyFrom(position);
+            if (board.play(move)) continue;
+            int count = board.generateMoves(replies);
+            if (count == 0) continue;
+            int best = engine.search(board, replies, count);
+            if (!ponderStopped) pondered.put(board.getKey(), best);
+        }
+    }
+
+    /**
+     * Stops pondering and waits for the background search to finish.
+     */
+    public void stopPondering() {
+        if (ponderer == null) return;
+        ponderStopped = true;
+        // A search may start after the first stop, so stop until it has gone.
+        while (ponderer.isAlive()) {
+            engine.stop();
+            try {
+                ponderer.join(10);
+            } catch (InterruptedException e) {
+                System.err.println("Interrupted whilst waiting for pondering to stop.");
+                break;
+            }
+        }
+        ponderer = null;
+    }
+
+    /**
+     * Stops pondering and the Engine's helper threads.
+     */
+    @Override
+    public void shutdown() {
+        stopPondering();
+        engine.shutdown();
+    }
+
+    /**
+     * Returns the number of Moves played at once because pondering had
+     * already searched the position.
+     *
+     * @return the number of ponder hits.
+     */
+    public int getPonderHits() {
+        return ponderHits;
+    }
+
+}
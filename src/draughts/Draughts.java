@@ -6,6 +6,7 @@ import java.awt.event.*;
 import java.util.*;
 import java.util.List;
 import java.util.concurrent.*;
+import java.io.*;
 import javax.imageio.*;
 
 /**
@@ -22,6 +23,11 @@ public class Draughts implements Player, ActionListener, WindowListener {
     private InputPDA pda;
     private BlockingQueue<Integer> queue;
     private BlockingQueue<String> initQueue;
+    private Player computer;
+    private Colour computerColour = Colour.White;
+    private GameJournal journal;
+    private MoveList turnMoves = new MoveList();
+    private Move[] turnCandidates = new Move[BitBoard.MAX_MOVES];
     
     /**
      * Called to start the game.
@@ -33,6 +39,8 @@ public class Draughts implements Player, ActionListener, WindowListener {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
             Draughts draughts = new Draughts();
             SwingUtilities.invokeAndWait(draughts::run);
+            // Read the catalogue of saved games now, so the Load dialog opens at once.
+            GameCatalogue.getCatalogue();
             draughts.initialiseGame();
         } catch (Exception e) {
             System.err.println("Error starting game." + e);
@@ -102,11 +110,18 @@ public class Draughts implements Player, ActionListener, WindowListener {
         } else if (e.getActionCommand().equals("load_game")) {
             // Load a new game - use a queue to wait for this.
             // Load a dialog to choose game.
-            String gameName = getInput("Load Game", "Choose which game to load:", SaveGame.savedGames());
+            String gameName = LoadGameView.showDialog(window, GameCatalogue.getCatalogue());
             if (gameName != null) {
                 put(initQueue, "load_game");
                 put(initQueue, gameName);
             }
+        } else if (e.getActionCommand().equals("computer_game")) {
+            // Start a new game against the computer - use a queue to wait for this.
+            String gameName = getInput("New Game", "Enter the name for the game:", null);
+            if (gameName != null) {
+                put(initQueue, "computer_game");
+                put(initQueue, gameName);
+            }
         }
     }
     
@@ -153,6 +168,8 @@ public class Draughts implements Player, ActionListener, WindowListener {
                 startGame(game_name);
             } else if (message_id.equals("load_game")) {
                 loadGame(game_name);
+            } else if (message_id.equals("computer_game")) {
+                startComputerGame(game_name);
             }
         } catch (InterruptedException e) {
             System.err.println("Interrupted from taking an item from the queue.");
@@ -161,14 +178,47 @@ public class Draughts implements Player, ActionListener, WindowListener {
     
     // Starts a new game of English Draughts.
     private void startGame(String gameName) {
+        computer = null;
         model = new DraughtsModel(gameName, this);
         playGame();
     }
     
+    // Starts a new game of English Draughts against the computer, which
+    // plays by Monte Carlo Tree Search if draughts.player is "mcts".
+    // @param gameName the name of the game to start.
+    private void startComputerGame(String gameName) {
+        model = new DraughtsModel(gameName, this);
+        if ("mcts".equals(System.getProperty("draughts.player"))) {
+            MonteCarloPlayer player = new MonteCarloPlayer(Integer.getInteger("draughts.hash", MonteCarloPlayer.DEFAULT_MEMORY),
+                                                           System.nanoTime());
+            player.setTimeLimit(1000);
+            player.setThreads(Runtime.getRuntime().availableProcessors());
+            player.setModel(model);
+            computer = player;
+        } else {
+            int hashSize = Integer.getInteger("draughts.hash", Engine.DEFAULT_HASH_SIZE);
+            Engine engine = new Engine(new Evaluation(), new TranspositionTable(hashSize));
+            engine.setTimeLimit(1000);
+            ComputerPlayer player = new ComputerPlayer(engine);
+            String book = System.getProperty("draughts.book");
+            if (book != null) {
+                try {
+                    player = new BookPlayer(engine, new OpeningBook(new File(book)), System.nanoTime());
+                } catch (IOException e) {
+                    System.err.println("Error opening the opening book, playing without it. " + e);
+                }
+            }
+            player.setModel(model);
+            computer = player;
+        }
+        playGame();
+    }
+    
     // Loads an existing game of English Draughts.
     // @param gameName the name of the game to load.
     private void loadGame(String gameName) {
         SaveGame game = SaveGame.loadGame(gameName);
+        computer = null;
         model = new DraughtsModel(gameName, this, game.getCurrentPlayer(), game.getPieces());
         playGame();
     }
@@ -179,13 +229,66 @@ public class Draughts implements Player, ActionListener, WindowListener {
         pda = new InputPDA(model);
         board.update(model.getPieces());
         board.setText(model.getCurrentPlayer().toString() + " Players turn.");
+        openJournal();
         model.start();
+        if (computer != null) computer.shutdown();
         board.update(model.getPieces());
         board.setText(model.getWinningMessage());
-        SaveGame.saveGame(model.getGameName(), model.getCurrentPlayer(), model.getPieces());
+        saveGame();
+        if (Boolean.getBoolean("draughts.frames")) {
+            System.out.println(board.getFrameTimes());
+            board.getFrameTimes().reset();
+        }
         initialiseGame();
     }
     
+    // Saves the game and closes its GameJournal, then updates its entry in
+    // the GameCatalogue, so the Load dialog lists it at once. It is called
+    // on the event thread when the window closes, so the position is taken
+    // and the GameJournal detached under the lock the model plays Moves with.
+    private void saveGame() {
+        DraughtsModel game = model;
+        BitBoard position;
+        GameJournal closing;
+        synchronized (game) {
+            position = game.toBitBoard();
+            game.setJournal(null);
+            closing = journal;
+            journal = null;
+        }
+        SaveGame.saveGame(game.getGameName(), position);
+        closeJournal(closing);
+        GameCatalogue.getCatalogue().put(game.getGameName(), position,
+                                         SaveGame.getFile(game.getGameName()).lastModified());
+    }
+    
+    // Opens the GameJournal of the game, so that each Move is kept as it is played.
+    private void openJournal() {
+        try {
+            File file = GameJournal.getFile(model.getGameName());
+            file.getParentFile().mkdirs();
+            GameJournal opened = GameJournal.open(file, model.toBitBoard());
+            synchronized (model) {
+                journal = opened;
+                model.setJournal(opened);
+            }
+        } catch (IOException e) {
+            System.err.println("Error opening game journal.");
+            System.exit(1);
+        }
+    }
+    
+    // Closes a GameJournal, after forcing its Moves to disk.
+    // @param closing the GameJournal to close, or null.
+    private static void closeJournal(GameJournal closing) {
+        if (closing == null) return;
+        try {
+            closing.close();
+        } catch (IOException e) {
+            System.err.println("Error writing game journal.");
+        }
+    }
+    
     /**
      * Returns the Move selected by the user.
      *
@@ -196,53 +299,47 @@ public class Draughts implements Player, ActionListener, WindowListener {
         Colour currentPlayer = model.getCurrentPlayer();
         board.update(model.getPieces());
         board.setText(currentPlayer.toString() + " Players turn.");
+        if (computer != null && currentPlayer.equals(computerColour)) {
+            Move move = computer.notify(validMoves);
+            board.animate(move);
+            return move;
+        }
+        // Pack the valid Moves once a turn, so checking each click
+        // compares ints and allocates nothing.
+        turnMoves.clear();
+        for (Move valid : validMoves) {
+            turnCandidates[turnMoves.size()] = valid;
+            turnMoves.add(valid.toPacked());
+        }
+        // Let the computer search on the user's time.
+        if (computer instanceof ComputerPlayer && !"false".equals(System.getProperty("draughts.ponder"))) {
+            ((ComputerPlayer) computer).ponder(validMoves);
+        }
         Move move = null;
         while(true) {
             try {
-                Integer x = queue.take();
-                Integer y = queue.take();
+                int x = queue.take();
+                int y = queue.take();
                 pda.transition(currentPlayer, x, y);
                 board.select(x, y);
                 if (pda.isAccepted()) {
-                    move = pda.createMove(currentPlayer);
-                    if (contains(validMoves, move)) break;
+                    int index = turnMoves.indexOf(pda.createPackedMove());
+                    if (index >= 0) {
+                        move = turnCandidates[index];
+                        break;
+                    }
                 }
             } catch (InterruptedException e) {
                 System.err.println("Interrupted from taking something from the queue.");
             }
         }
         pda.reset();
-        animatePiece(move);
+        Arrays.fill(turnCandidates, null);
+        board.animate(move);
         board.select(-1, -1);
         return move;
     }
     
-    // Animates a specified Move.
-    // @param move the Move to be animated.
-    private void animatePiece(Move move) {
-        board.setupAnimation(move);
-        for (int i = 0; i < 50; i++) {
-            try {
-                Thread.sleep(5);
-            } catch (InterruptedException e) {
-                System.err.println("Interrupted from sleeping whilst animating a Piece.");
-            }
-            board.updateAnimation((double) i / 50.0);
-        }
-        board.resetAnimation();
-    }
-    
-    // Returns true if the Set contains the Move.
-    // @param moves the Set containing the Moves.
-    // @param move the Move to be checked.
-    // @return true if the Set contains the Move.
-    private boolean contains(Set<Move> moves, Move move) {
-        for (Move m : moves) {
-            if (m.toString().equals(move.toString())) return true;
-        }
-        return false;
-    }
-    
     /**
      * Called when the window is closing.
      * Saves the current game.
@@ -252,7 +349,7 @@ public class Draughts implements Player, ActionListener, WindowListener {
      */
     public void windowClosing(WindowEvent e) {
         if (model != null) {
-            SaveGame.saveGame(model.getGameName(), model.getCurrentPlayer(), model.getPieces());
+            saveGame();
         }
     }
     
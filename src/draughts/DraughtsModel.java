@@ -13,6 +13,14 @@ class DraughtsModel {
     private Colour currentPlayer;
     private Player player;
     private Set<Piece> pieces;
+    private Piece[] squares = new Piece[64];
+    private long key;
+    private int turns;
+    private int maxTurns;
+    private GameJournal journal;
+    private Map<Piece, Set<Move>> pieceMoves = new HashMap<Piece, Set<Move>>();
+    private long cacheHits;
+    private long recomputations;
     
     /**
      * Constructs a game of Draughts from a save game.
@@ -25,6 +33,19 @@ class DraughtsModel {
         this.player = player;
         this.currentPlayer = currentPlayer;
         this.pieces = pieces;
+        indexPieces();
+        key = hash();
+    }
+    
+    /**
+     * Constructs a game of Draughts from a BitBoard.
+     *
+     * @param player the Player object used to get the Moves
+     * from the users.
+     * @param board the BitBoard holding the position.
+     */
+    public DraughtsModel(String gameName, Player player, BitBoard board) {
+        this(gameName, player, board.getCurrentPlayer(), board.getPieces());
     }
     
     /**
@@ -39,6 +60,16 @@ class DraughtsModel {
         pieces = new HashSet<Piece>();
         currentPlayer = Colour.Red;
         initialisePieces();
+        indexPieces();
+        key = hash();
+    }
+    
+    // Indexes each Piece by its square, so it can be found without
+    // searching the Set of Pieces.
+    private void indexPieces() {
+        for (Piece piece : pieces) {
+            squares[(piece.getY() << 3) | piece.getX()] = piece;
+        }
     }
     
     // Creates the initial Set of Pieces.
@@ -57,43 +88,121 @@ class DraughtsModel {
     
     /**
      * Starts the game.
+     * If a maximum number of turns has been set, the game stops
+     * after that many turns and is a draw.
      */
     public void start() {
-        while(!isGameOver()) {
+        while(!isOver()) {
             turn();
         }
     }
     
+    /**
+     * Returns true if the game is over, either because the current player
+     * has no Moves or because the maximum number of turns has been played.
+     *
+     * @return true if the game is over.
+     */
+    public boolean isOver() {
+        return isGameOver() || (maxTurns != 0 && turns >= maxTurns);
+    }
+    
+    /**
+     * Sets the number of turns after which the game is a draw,
+     * or 0 for no limit.
+     *
+     * @param maxTurns the number of turns after which the game is a draw.
+     */
+    public void setMaxTurns(int maxTurns) {
+        this.maxTurns = maxTurns;
+    }
+    
+    /**
+     * Sets the GameJournal each Move is appended to as it is played, or null for none.
+     * It can be called from any thread, as it waits for a Move being played.
+     *
+     * @param journal the GameJournal to append Moves to.
+     */
+    public synchronized void setJournal(GameJournal journal) {
+        this.journal = journal;
+    }
+    
+    /**
+     * Returns the number of turns played so far.
+     *
+     * @return the number of turns played so far.
+     */
+    public int getTurns() {
+        return turns;
+    }
+    
     /**
      * Performs a turn in the game.
      */
     public void turn() {
-        Move move = getPlayerMove(validMoves(currentPlayer));
-        play(move);
-        nextPlayer();
+        Set<Move> validMoves = beginTurn();
+        do {
+            validMoves = playStep(getPlayerMove(validMoves));
+        } while (!validMoves.isEmpty());
+    }
+    
+    /**
+     * Starts a turn without asking the Player for a Move, so that the game
+     * can be played a Move at a time by a driver such as GameDriver.
+     *
+     * @return the Set of valid Moves for the current player.
+     */
+    public Set<Move> beginTurn() {
+        turns++;
+        return validMoves(currentPlayer);
+    }
+    
+    /**
+     * Plays one Move of a turn started by beginTurn. If the Move was a jump
+     * and the Piece can jump again, the turn continues and the jumps are
+     * returned. Otherwise the turn ends, the other player is to move and
+     * the returned Set is empty. The Move is played whilst holding the
+     * lock of the model, so other threads see it whole.
+     *
+     * @param move the Move to be played, one of the last valid Moves.
+     * @return the Set of jumps continuing the turn, empty if the turn is over.
+     * @throws IllegalArgumentException if the Piece of the Move is not in the game.
+     */
+    public synchronized Set<Move> playStep(Move move) {
+        Set<Move> validMoves = play(move);
+        if (validMoves.isEmpty()) nextPlayer();
+        return validMoves;
     }
     
     // Plays a Move in the game.
     // @param move the Move to be played.
-    private void play(Move move) {
+    // @return the Set of jumps continuing the turn, empty if the turn is over.
+    private Set<Move> play(Move move) {
         Point destination = move.destination;
-        Point position = null;
-        for (Piece piece : pieces) {
-            if (piece.equals(move.piece)) {
-                position = new Point(piece.getX(), piece.getY());
-                piece.setX((int) destination.getX());
-                piece.setY((int) destination.getY());
-            }
-        }
+        Piece piece = move.piece;
+        if (getPiece(piece.getX(), piece.getY()) != piece) throw new IllegalArgumentException();
+        Point position = new Point(piece.getX(), piece.getY());
+        touch(piece.getX(), piece.getY());
+        key ^= pieceKey(piece);
+        squares[(piece.getY() << 3) | piece.getX()] = null;
+        piece.setX((int) destination.getX());
+        piece.setY((int) destination.getY());
+        squares[(piece.getY() << 3) | piece.getX()] = piece;
+        key ^= pieceKey(piece);
+        touch((int) destination.getX(), (int) destination.getY());
         boolean jump = removePiece(position, destination);
+        if (journal != null) {
+            journal.append(BitBoard.square((int) position.getX(), (int) position.getY()),
+                           BitBoard.square((int) destination.getX(), (int) destination.getY()));
+        }
         boolean jumpOntoKing = jumpOntoKing(move.piece);
         checkForKing();
-        Set<Move> validMoves = validMoves(currentPlayer, move.piece, 1, true);
-        if (move.piece.isKing()) validMoves.addAll(validMoves(currentPlayer, move.piece, -1, true));
-        if (jump && validMoves.size() > 0 && !jumpOntoKing) {
-            Move m = getPlayerMove(validMoves);
-            play(m);
+        Set<Move> validMoves = new HashSet<Move>();
+        for (Move next : pieceMoves(move.piece)) {
+            if (Math.abs(next.destination.getX() - move.piece.getX()) == 2) validMoves.add(next);
         }
+        if (jump && validMoves.size() > 0 && !jumpOntoKing) return validMoves;
+        return new HashSet<Move>();
     }
     
     // If a Piece has been jumped over, it will be removed.
@@ -108,7 +217,13 @@ class DraughtsModel {
             x = (int) (position.getX() + (x / 2));
             y = (int) (position.getY() + (y / 2));
             Piece piece = getPiece(x, y);
+            if (piece != null) {
+                key ^= pieceKey(piece);
+                squares[(y << 3) | x] = null;
+            }
             pieces.remove(piece);
+            pieceMoves.remove(piece);
+            touch(x, y);
             return true;
         }
         return false;
@@ -136,6 +251,7 @@ class DraughtsModel {
     
     // Updates the current player.
     private void nextPlayer() {
+        key ^= Zobrist.WHITE_TO_MOVE;
         if (currentPlayer.equals(Colour.Red)) currentPlayer = Colour.White;
         else currentPlayer = Colour.Red;
     }
@@ -146,16 +262,58 @@ class DraughtsModel {
     private Set<Move> validMoves(Colour player) {
         Set<Move> validMoves = new HashSet<Move>();
         for (Piece piece : pieces) {
-            if (piece.getColour().equals(player)) {
-                if (piece.isKing()) {
-                    validMoves.addAll(validMoves(player, piece, -1, false));
-                }
-                validMoves.addAll(validMoves(player, piece, 1, false));
-            }
+            if (piece.getColour().equals(player)) validMoves.addAll(pieceMoves(piece));
         }
         return validMoves;
     }
     
+    // Returns true if a player has a valid Move, without collecting them.
+    // @param player the Colour of the player.
+    // @return true if a player has a valid Move.
+    private boolean hasMoves(Colour player) {
+        for (Piece piece : pieces) {
+            if (piece.getColour().equals(player) && !pieceMoves(piece).isEmpty()) return true;
+        }
+        return false;
+    }
+    
+    // Returns the valid Moves of a Piece from the cache, generating them
+    // if a Move has touched a square they depend on since they were cached.
+    // @param piece the Piece to get the Moves for.
+    // @return the Set of valid Moves for the Piece.
+    private Set<Move> pieceMoves(Piece piece) {
+        Set<Move> moves = pieceMoves.get(piece);
+        if (moves != null) {
+            cacheHits++;
+            return moves;
+        }
+        recomputations++;
+        moves = validMoves(piece.getColour(), piece, 1, false);
+        if (piece.isKing()) moves.addAll(validMoves(piece.getColour(), piece, -1, false));
+        pieceMoves.put(piece, moves);
+        return moves;
+    }
+    
+    // Removes the cached Moves of every Piece whose Moves depend on a square,
+    // that is every Piece within a jump of it, found on the 5 by 5 block of
+    // squares around it.
+    // @param x the x coordinate of the square that has changed.
+    // @param y the y coordinate of the square that has changed.
+    private void touch(int x, int y) {
+        for (int dy = -2; dy <= 2; dy++) {
+            for (int dx = -2; dx <= 2; dx++) {
+                Piece piece = getPiece(x + dx, y + dy);
+                if (piece != null) pieceMoves.remove(piece);
+            }
+        }
+    }
+
+    // Empties the cache of Moves, so that the Moves of every Piece are
+    // generated again. Used by the benchmarks to time Move generation.
+    void clearMoveCache() {
+        pieceMoves.clear();
+    }
+    
     // Returns the Set of valid Moves for a normal Piece.
     // For normal players, yOffset = 1, for king players yOffset = -1.
     // @param player the Colour of the player to whom the Moves relate.
@@ -201,9 +359,32 @@ class DraughtsModel {
     // it sets their king boolean to true.
     private void checkForKing() {
         for (Piece piece : pieces) {
-            if ((piece.getColour().equals(Colour.Red) && piece.getY() == 0)
-                || (piece.getColour().equals(Colour.White) && piece.getY() == 7)) piece.setKing(true);
+            if (!piece.isKing() && ((piece.getColour().equals(Colour.Red) && piece.getY() == 0)
+                || (piece.getColour().equals(Colour.White) && piece.getY() == 7))) {
+                key ^= pieceKey(piece);
+                piece.setKing(true);
+                key ^= pieceKey(piece);
+                pieceMoves.remove(piece);
+            }
+        }
+    }
+    
+    // Returns the Zobrist key of the Pieces and the current player.
+    // @return the Zobrist key of the Pieces and the current player.
+    private long hash() {
+        long key = currentPlayer.equals(Colour.White) ? Zobrist.WHITE_TO_MOVE : 0;
+        for (Piece piece : pieces) {
+            key ^= pieceKey(piece);
         }
+        return key;
+    }
+    
+    // Returns the Zobrist key of a Piece.
+    // @param piece the Piece on the board.
+    // @return the Zobrist key of a Piece.
+    private long pieceKey(Piece piece) {
+        int square = BitBoard.square(piece.getX(), piece.getY());
+        return Zobrist.piece(piece.getColour(), piece.isKing(), square);
     }
     
     /**
@@ -215,6 +396,15 @@ class DraughtsModel {
         return currentPlayer;
     }
     
+    /**
+     * Returns the Set of valid Moves for the current player.
+     *
+     * @return the Set of valid Moves for the current player.
+     */
+    public Set<Move> getValidMoves() {
+        return validMoves(currentPlayer);
+    }
+    
     /**
      * Returns the Set of Pieces.
      *
@@ -224,6 +414,46 @@ class DraughtsModel {
         return pieces;
     }
     
+    /**
+     * Returns a BitBoard holding the current position. It can be called
+     * from any thread, as it waits for a Move being played.
+     *
+     * @return a BitBoard holding the current position.
+     */
+    public synchronized BitBoard toBitBoard() {
+        return new BitBoard(currentPlayer, pieces);
+    }
+    
+    /**
+     * Returns the Zobrist key of the current position. It is kept up to
+     * date as Moves are played, so it matches the key of toBitBoard().
+     *
+     * @return the Zobrist key of the current position.
+     */
+    public long getKey() {
+        return key;
+    }
+    
+    /**
+     * Returns the number of times the Moves of a Piece were taken from the
+     * cache rather than generated.
+     *
+     * @return the number of times the Moves of a Piece were taken from the cache.
+     */
+    public long getCacheHits() {
+        return cacheHits;
+    }
+    
+    /**
+     * Returns the number of times the Moves of a Piece were generated,
+     * because they were not cached or a Move touched a square they depend on.
+     *
+     * @return the number of times the Moves of a Piece were generated.
+     */
+    public long getRecomputations() {
+        return recomputations;
+    }
+    
     /**
      * Returns the name of the game.
      *
@@ -241,18 +471,29 @@ class DraughtsModel {
      * @return the Piece with the specified coordinates.
      */
     public Piece getPiece(int x, int y) {
-        for (Piece piece : pieces) {
-            if (piece.getX() == x && piece.getY() == y) return piece;
-        }
-        return null;
+        if (0 > x || x > 7 || 0 > y || y > 7) return null;
+        return squares[(y << 3) | x];
+    }
+    
+    /**
+     * Returns the Move of a packed Move in the current position, for
+     * handing a Move chosen on a BitBoard to the rest of the game.
+     *
+     * @param move the packed Move.
+     * @return the Move, or null if there is no Piece on its first square.
+     */
+    public Move toMove(int move) {
+        int from = BitBoard.getFrom(move);
+        int to = BitBoard.getTo(move);
+        Piece piece = getPiece(BitBoard.getX(from), BitBoard.getY(from));
+        if (piece == null) return null;
+        return new Move(piece, BitBoard.getX(to), BitBoard.getY(to));
     }
     
     // Returns true if the game is over.
     // @return true if the game is over.
     private boolean isGameOver() {
-        if (validMoves(Colour.Red).size() == 0 && currentPlayer.equals(Colour.Red)
-            || validMoves(Colour.White).size() == 0 && currentPlayer.equals(Colour.White)) return true;
-        return false;
+        return !hasMoves(currentPlayer);
     }
     
     /**
@@ -261,8 +502,21 @@ class DraughtsModel {
      * @return a String containing who won the game.
      */
     public String getWinningMessage() {
-        if (validMoves(Colour.Red).size() == 0) return "White Player wins!";
-        else return "Red Player wins!";
+        Colour winner = getWinner();
+        if (winner == null) return "The game is a draw.";
+        return winner.toString() + " Player wins!";
+    }
+    
+    /**
+     * Returns the Colour of the winner, or null if the game
+     * is not over or was stopped as a draw.
+     *
+     * @return the Colour of the winner.
+     */
+    public Colour getWinner() {
+        if (!isGameOver()) return null;
+        if (currentPlayer.equals(Colour.Red)) return Colour.White;
+        else return Colour.Red;
     }
     
 }
\ No newline at end of file
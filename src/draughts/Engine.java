@@ -0,0 +1,521 @@
+package draughts;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A class to search for the best Move using iterative deepening
+ * alpha-beta search over BitBoard positions.
+ * A multi-jump is searched as a series of Moves by the same player,
+ * the way DraughtsModel asks the Player for each jump in turn.
+ * With more than one thread, helper Engines search the same root at
+ * staggered depths and share the TranspositionTable (lazy SMP), so each
+ * thread finds the others' results in the table.
+ */
+
+public class Engine {
+
+    /**
+     * The score of a position in which the player to move has lost.
+     */
+    public static final int MATE = 30000;
+
+    /**
+     * The largest depth that can be searched.
+     */
+    public static final int MAX_DEPTH = 64;
+
+    /**
+     * The default size of the TranspositionTable in megabytes.
+     */
+    public static final int DEFAULT_HASH_SIZE = 16;
+
+    // The deepest ply reachable, allowing for multi-jump continuations.
+    private static final int MAX_PLY = 256;
+    // The score of a win found in the Tablebase at the root, less its
+    // distance in turns. Like mate scores, it is reduced by the ply.
+    private static final int TABLEBASE_WIN = MATE - (2 * MAX_PLY);
+    // Scores at least this far from 0 are mate or Tablebase scores.
+    private static final int TABLEBASE_BOUND = TABLEBASE_WIN - (2 * MAX_PLY);
+    // The number of nodes searched between checks of the time and node limits.
+    private static final int CHECK_INTERVAL = 1024;
+
+    private final Evaluation evaluation;
+    private final TranspositionTable table;
+    private Tablebase tablebase;
+    private final BitBoard[] boards;
+    private final int[][] moves;
+    private long timeLimit;
+    private long nodeLimit;
+    private int maxDepth = MAX_DEPTH;
+    private long nodes;
+    private long deadline;
+    private boolean stopped;
+    private int bestMove;
+    private int bestScore;
+    private int depth;
+    private int iteration;
+    private long elapsed;
+    private long totalNodes;
+    private volatile boolean aborted;
+    private Engine[] helpers = new Engine[0];
+    private ExecutorService pool;
+
+    /**
+     * Constructs a new Engine object using the default Evaluation.
+     */
+    public Engine() {
+        this(new Evaluation());
+    }
+
+    /**
+     * Constructs a new Engine object with a TranspositionTable of the default size.
+     *
+     * @param evaluation the Evaluation used to score positions.
+     */
+    public Engine(Evaluation evaluation) {
+        this(evaluation, new TranspositionTable(DEFAULT_HASH_SIZE));
+    }
+
+    /**
+     * Constructs a new Engine object.
+     *
+     * @param evaluation the Evaluation used to score positions.
+     * @param table the TranspositionTable to store results in, or null for none.
+     */
+    public Engine(Evaluation evaluation, TranspositionTable table) {
+        this.evaluation = evaluation;
+        this.table = table;
+        boards = new BitBoard[MAX_PLY + 1];
+        moves = new int[MAX_PLY + 1][BitBoard.MAX_MOVES];
+        for (int i = 0; i <= MAX_PLY; i++) {
+            boards[i] = new BitBoard(Colour.Red, 0, 0, 0);
+        }
+    }
+
+    /**
+     * Sets the time the search may take in milliseconds, or 0 for no limit.
+     *
+     * @param timeLimit the time the search may take in milliseconds.
+     */
+    public void setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * Sets the number of nodes the search may visit, or 0 for no limit.
+     *
+     * @param nodeLimit the number of nodes the search may visit.
+     */
+    public void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Sets the deepest iteration of the search.
+     *
+     * @param maxDepth the deepest iteration of the search.
+     * @throws IllegalArgumentException if maxDepth is not between 1 and MAX_DEPTH.
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 1 || maxDepth > MAX_DEPTH) throw new IllegalArgumentException();
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Sets the Tablebase probed for positions with few Pieces, or null for none.
+     *
+     * @param tablebase the Tablebase to probe.
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+        for (Engine helper : helpers) {
+            helper.tablebase = tablebase;
+        }
+    }
+
+    /**
+     * Sets the number of threads used by each search.
+     *
+     * @param threads the number of threads used by each search.
+     * @throws IllegalArgumentException if threads is less than 1.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException();
+        if (pool != null) pool.shutdownNow();
+        pool = null;
+        helpers = new Engine[threads - 1];
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i] = new Engine(evaluation, table);
+            helpers[i].tablebase = tablebase;
+        }
+        if (threads > 1) {
+            pool = Executors.newFixedThreadPool(threads - 1, runnable -> {
+                Thread thread = new Thread(runnable, "Engine helper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Stops the helper threads, leaving the Engine with one thread.
+     */
+    public void shutdown() {
+        setThreads(1);
+    }
+
+    /**
+     * Returns the number of threads used by each search.
+     *
+     * @return the number of threads used by each search.
+     */
+    public int getThreads() {
+        return helpers.length + 1;
+    }
+
+    /**
+     * Returns the TranspositionTable the Engine stores results in.
+     *
+     * @return the TranspositionTable, or null if there is none.
+     */
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Stops the current search as soon as possible. It may be called
+     * from any thread.
+     */
+    public void stop() {
+        aborted = true;
+    }
+
+    /**
+     * Returns the best of the root Moves from a position.
+     * The first iteration always completes unless stop() is called,
+     * so a Move is returned even if the limits are very small.
+     *
+     * @param position the BitBoard to search from.
+     * @param rootMoves the packed Moves the player may choose between.
+     * @param count the number of root Moves.
+     * @return the best packed Move.
+     * @throws IllegalArgumentException if there are no root Moves.
+     */
+    public int search(BitBoard position, int[] rootMoves, int count) {
+        if (count == 0) throw new IllegalArgumentException();
+        long start = System.currentTimeMillis();
+        deadline = timeLimit > 0 ? start + timeLimit : Long.MAX_VALUE;
+        aborted = false;
+        if (table != null) table.newSearch();
+        int[] root = new int[count];
+        System.arraycopy(rootMoves, 0, root, 0, count);
+        orderJumpsFirst(root, count);
+        List<Future<?>> running = new ArrayList<Future<?>>();
+        for (int i = 0; i < helpers.length; i++) {
+            final Engine helper = helpers[i];
+            final int[] helperRoot = root.clone();
+            final int firstDepth = 1 + ((i + 1) % 2);
+            // Helpers start at alternate depths and with the root Moves rotated,
+            // so they explore different parts of the tree first.
+            rotate(helperRoot, count, (i + 1) % count);
+            helper.aborted = false;
+            helper.maxDepth = maxDepth;
+            helper.deadline = Long.MAX_VALUE;
+            running.add(pool.submit(() -> helper.iterate(position, helperRoot, count, firstDepth)));
+        }
+        iterate(position, root, count, 1);
+        totalNodes = nodes;
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i].aborted = true;
+        }
+        for (int i = 0; i < helpers.length; i++) {
+            try {
+                running.get(i).get();
+            } catch (InterruptedException e) {
+                System.err.println("Interrupted whilst waiting for a helper search.");
+            } catch (ExecutionException e) {
+                System.err.println("Error in a helper search. " + e.getCause());
+            }
+            Engine helper = helpers[i];
+            totalNodes += helper.nodes;
+            if (helper.depth > depth) {
+                bestMove = helper.bestMove;
+                bestScore = helper.bestScore;
+                depth = helper.depth;
+            }
+        }
+        elapsed = System.currentTimeMillis() - start;
+        return bestMove;
+    }
+
+    // Runs the iterative deepening loop from a position, keeping the
+    // result of the deepest completed iteration.
+    // @param position the BitBoard to search from.
+    // @param root the root Moves, which are reordered.
+    // @param count the number of root Moves.
+    // @param firstDepth the depth of the first iteration.
+    private void iterate(BitBoard position, int[] root, int count, int firstDepth) {
+        nodes = 0;
+        stopped = false;
+        boards[0].copyFrom(position);
+        bestMove = root[0];
+        bestScore = 0;
+        depth = 0;
+        for (iteration = firstDepth; iteration <= maxDepth; iteration++) {
+            int alpha = -MATE - 1;
+            int move = root[0];
+            for (int i = 0; i < count; i++) {
+                int score = child(root[i], iteration, alpha, MATE + 1, 0);
+                if (stopped) break;
+                if (score > alpha) {
+                    alpha = score;
+                    move = root[i];
+                }
+            }
+            if (stopped) break;
+            bestMove = move;
+            bestScore = alpha;
+            depth = iteration;
+            moveToFront(root, count, move);
+            if (Math.abs(alpha) >= MATE - MAX_PLY) break;
+        }
+    }
+
+    // Plays a Move from the board at a ply and returns its score for the
+    // player who made it.
+    // @param move the packed Move to be played.
+    // @param depth the remaining depth before the Move.
+    // @param alpha the lower bound of the window.
+    // @param beta the upper bound of the window.
+    // @param ply the ply of the board the Move is played from.
+    // @return the score of the Move for the player who made it.
+    private int child(int move, int depth, int alpha, int beta, int ply) {
+        BitBoard board = boards[ply + 1];
+        board.copyFrom(boards[ply]);
+        if (board.play(move)) return alphaBeta(depth, alpha, beta, ply + 1);
+        return -alphaBeta(depth - 1, -beta, -alpha, ply + 1);
+    }
+
+    // Returns the score of the board at a ply for the player to move.
+    // @param depth the remaining depth.
+    // @param alpha the lower bound of the window.
+    // @param beta the upper bound of the window.
+    // @param ply the ply of the board.
+    // @return the score of the board for the player to move.
+    private int alphaBeta(int depth, int alpha, int beta, int ply) {
+        nodes++;
+        if ((nodes % CHECK_INTERVAL) == 0) checkLimits();
+        if (stopped) return 0;
+        BitBoard board = boards[ply];
+        if (ply >= MAX_PLY) return evaluation.evaluate(board);
+        if (tablebase != null && Integer.bitCount(board.getRed() | board.getWhite()) <= tablebase.getMaxPieces()) {
+            int value = tablebase.probe(board);
+            if (Tablebase.isWin(value)) return TABLEBASE_WIN - ply - Tablebase.distance(value);
+            if (Tablebase.isLoss(value)) return ply + Tablebase.distance(value) - TABLEBASE_WIN;
+            if (value == 0) return 0;
+        }
+        if (depth <= 0 && board.getJumping() < 0) return evaluation.evaluate(board);
+        int ttMove = 0;
+        long key = board.getKey();
+        if (table != null) {
+            long entry = table.probe(key);
+            if (entry != 0) {
+                ttMove = TranspositionTable.getMove(entry);
+                if (TranspositionTable.getDepth(entry) >= depth) {
+                    int score = fromTable(TranspositionTable.getScore(entry), ply);
+                    int bound = TranspositionTable.getBound(entry);
+                    if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && score >= beta)
+                        || (bound == TranspositionTable.UPPER && score <= alpha)) return score;
+                }
+            }
+        }
+        int[] list = moves[ply];
+        int count = board.generateMoves(list);
+        if (count == 0) return ply - MATE;
+        orderJumpsFirst(list, count);
+        if (ttMove != 0) moveToFront(list, count, ttMove);
+        int alphaStart = alpha;
+        int best = -MATE - 1;
+        int chosen = 0;
+        for (int i = 0; i < count; i++) {
+            int score = child(list[i], depth, alpha, beta, ply);
+            if (stopped) return 0;
+            if (score > best) {
+                best = score;
+                chosen = list[i];
+                if (score > alpha) alpha = score;
+                if (alpha >= beta) break;
+            }
+        }
+        if (table != null) {
+            int bound = best <= alphaStart ? TranspositionTable.UPPER
+                        : best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+            table.store(key, chosen, toTable(best, ply), depth, bound);
+        }
+        return best;
+    }
+
+    // Returns a score to be stored, with mate and Tablebase scores made
+    // relative to the position.
+    // @param score the score relative to the root.
+    // @param ply the ply of the position.
+    // @return the score relative to the position.
+    private static int toTable(int score, int ply) {
+        if (score >= TABLEBASE_BOUND) return score + ply;
+        if (score <= -TABLEBASE_BOUND) return score - ply;
+        return score;
+    }
+
+    // Returns a stored score, with mate and Tablebase scores made relative to the root.
+    // @param score the score relative to the position.
+    // @param ply the ply of the position.
+    // @return the score relative to the root.
+    private static int fromTable(int score, int ply) {
+        if (score >= TABLEBASE_BOUND) return score - ply;
+        if (score <= -TABLEBASE_BOUND) return score + ply;
+        return score;
+    }
+
+    // Stops the search if it has been aborted, or if the time or node
+    // limit has been reached. Limits never stop the first iteration.
+    private void checkLimits() {
+        if (aborted) {
+            stopped = true;
+            return;
+        }
+        if (iteration == 1) return;
+        if (nodeLimit > 0 && nodes >= nodeLimit) stopped = true;
+        if (System.currentTimeMillis() >= deadline) stopped = true;
+    }
+
+    // Moves the jumps to the front of a list of Moves.
+    // @param list the packed Moves.
+    // @param count the number of Moves.
+    private static void orderJumpsFirst(int[] list, int count) {
+        int next = 0;
+        for (int i = 0; i < count; i++) {
+            if (BitBoard.isJump(list[i])) {
+                int move = list[i];
+                list[i] = list[next];
+                list[next++] = move;
+            }
+        }
+    }
+
+    // Rotates the first count Moves of a list to the left.
+    // @param list the packed Moves.
+    // @param count the number of Moves.
+    // @param distance the number of places to rotate by.
+    private static void rotate(int[] list, int count, int distance) {
+        int[] copy = Arrays.copyOf(list, count);
+        for (int i = 0; i < count; i++) {
+            list[i] = copy[(i + distance) % count];
+        }
+    }
+
+    // Moves a Move to the front of a list, keeping the others in order.
+    // @param list the packed Moves.
+    // @param count the number of Moves.
+    // @param move the packed Move to be moved.
+    private static void moveToFront(int[] list, int count, int move) {
+        for (int i = 0; i < count; i++) {
+            if (list[i] == move) {
+                System.arraycopy(list, 0, list, 1, i);
+                list[0] = move;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the best Move found by the last search.
+     *
+     * @return the best packed Move found by the last search.
+     */
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * Returns the score of the best Move found by the last search.
+     *
+     * @return the score of the best Move found by the last search.
+     */
+    public int getScore() {
+        return bestScore;
+    }
+
+    /**
+     * Returns the depth of the last completed iteration.
+     *
+     * @return the depth of the last completed iteration.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the number of nodes visited by the last search,
+     * over all threads.
+     *
+     * @return the number of nodes visited by the last search.
+     */
+    public long getNodes() {
+        return totalNodes;
+    }
+
+    /**
+     * Returns the time taken by the last search in milliseconds.
+     *
+     * @return the time taken by the last search in milliseconds.
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Returns the number of nodes visited per second by the last search.
+     *
+     * @return the number of nodes visited per second by the last search.
+     */
+    public long getNodesPerSecond() {
+        return (totalNodes * 1000) / Math.max(1, elapsed);
+    }
+
+    /**
+     * Returns a String describing the last search.
+     *
+     * @return a String describing the last search.
+     */
+    @Override
+    public String toString() {
+        return "depth " + depth + " score " + bestScore + " nodes " + totalNodes
+                + " time " + elapsed + "ms nps " + getNodesPerSecond() + " threads " + getThreads();
+    }
+
+    /**
+     * Searches the opening position and prints the nodes per second,
+     * so engine throughput can be compared between releases.
+     * Usage: Engine [depth] [time in milliseconds] [hash size in megabytes] [threads]
+     *
+     * @param args the arguments provided by the user.
+     */
+    public static void main(String[] args) {
+        int maxDepth = args.length > 0 ? Integer.parseInt(args[0]) : 12;
+        long time = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        int hashSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_HASH_SIZE;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        Engine engine = new Engine(new Evaluation(), new TranspositionTable(hashSize));
+        engine.setMaxDepth(maxDepth);
+        engine.setTimeLimit(time);
+        engine.setThreads(threads);
+        BitBoard board = new DraughtsModel("engine", null).toBitBoard();
+        int[] rootMoves = new int[BitBoard.MAX_MOVES];
+        int count = board.generateMoves(rootMoves);
+        engine.search(board, rootMoves, count);
+        System.out.println(engine);
+    }
+
+}
@@ -0,0 +1,215 @@
+package draughts;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+
+/**
+ * A class to score a BitBoard from the point of view of the player to move.
+ * The score is the sum of each weight times its feature, so the weights
+ * can be tuned by Tuner. Tuned weights are read at startup from the file
+ * named by the draughts.weights property, or evaluation.weights in the
+ * working directory, which holds one "name value" line per weight.
+ */
+
+public class Evaluation {
+
+    /**
+     * The index of the weight for each man.
+     */
+    public static final int MAN = 0;
+
+    /**
+     * The index of the weight for each king.
+     */
+    public static final int KING = 1;
+
+    /**
+     * The index of the weight for each man still on its own back row.
+     */
+    public static final int BACK_RANK = 2;
+
+    /**
+     * The index of the weight for each row a man has advanced.
+     */
+    public static final int ADVANCE = 3;
+
+    /**
+     * The index of the weight for each Piece on the centre squares.
+     */
+    public static final int CENTRE = 4;
+
+    /**
+     * The index of the weight for each valid Move.
+     */
+    public static final int MOBILITY = 5;
+
+    /**
+     * The number of weights.
+     */
+    public static final int SIZE = 6;
+
+    /**
+     * The file the default weights are read from if the draughts.weights
+     * property is not set.
+     */
+    public static final String WEIGHTS_FILE = "evaluation.weights";
+
+    // The name of each weight in a weights file.
+    private static final String[] NAMES = {"man", "king", "backRank", "advance", "centre", "mobility"};
+    // The weights used when there is no weights file.
+    private static final int[] BUILT_IN_WEIGHTS = {100, 150, 8, 2, 4, 1};
+
+    // The squares of rows 7 and 0, where Red and White men start.
+    private static final int RED_BACK_ROW = 0xF0000000;
+    private static final int WHITE_BACK_ROW = 0x0000000F;
+    // The squares of the middle four columns in rows 2 to 5.
+    private static final int CENTRE_SQUARES = 0x00666600;
+
+    // The default weights, read from the weights file when first needed.
+    private static int[] defaultWeights;
+
+    private final int[] weights;
+
+    /**
+     * Constructs a new Evaluation object with the default weights, read
+     * from the weights file if there is one.
+     */
+    public Evaluation() {
+        this(getDefaultWeights());
+    }
+
+    /**
+     * Constructs a new Evaluation object.
+     *
+     * @param weights the weights, indexed by MAN, KING and so on.
+     * @throws IllegalArgumentException if there are not SIZE weights.
+     */
+    public Evaluation(int[] weights) {
+        if (weights.length != SIZE) throw new IllegalArgumentException();
+        this.weights = weights.clone();
+    }
+
+    // Returns the default weights, reading the weights file the first time.
+    // A file that cannot be read is reported and the built-in weights are used.
+    // @return the default weights.
+    private static synchronized int[] getDefaultWeights() {
+        if (defaultWeights == null) {
+            defaultWeights = BUILT_IN_WEIGHTS;
+            File file = new File(System.getProperty("draughts.weights", WEIGHTS_FILE));
+            if (file.exists()) {
+                try {
+                    defaultWeights = load(file).weights;
+                } catch (IOException | IllegalArgumentException e) {
+                    System.err.println("Error reading evaluation weights, using the built-in weights. " + e);
+                }
+            }
+        }
+        return defaultWeights;
+    }
+
+    /**
+     * Returns an Evaluation with the weights held in a file. Weights not
+     * named in the file keep their built-in values.
+     *
+     * @param file the weights file.
+     * @return an Evaluation with the weights held in the file.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if a line is not a known name and a number.
+     */
+    public static Evaluation load(File file) throws IOException {
+        int[] weights = BUILT_IN_WEIGHTS.clone();
+        for (String line : Files.readAllLines(file.toPath())) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] pair = line.split("\\s+");
+            int index = Arrays.asList(NAMES).indexOf(pair[0]);
+            if (pair.length != 2 || index < 0) throw new IllegalArgumentException(line);
+            weights[index] = Integer.parseInt(pair[1]);
+        }
+        return new Evaluation(weights);
+    }
+
+    /**
+     * Writes the weights to a file that load can read.
+     *
+     * @param file the weights file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void save(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < SIZE; i++) {
+            lines.add(NAMES[i] + " " + weights[i]);
+        }
+        Files.write(file.toPath(), lines);
+    }
+
+    /**
+     * Returns the score of a position for the player to move.
+     *
+     * @param board the BitBoard to be scored.
+     * @return the score of a position for the player to move.
+     */
+    public int evaluate(BitBoard board) {
+        int score = 0;
+        int red = board.getRed();
+        int white = board.getWhite();
+        int kings = board.getKings();
+        int redMen = red & ~kings;
+        int whiteMen = white & ~kings;
+        score += weights[MAN] * (Integer.bitCount(redMen) - Integer.bitCount(whiteMen));
+        score += weights[KING] * (Integer.bitCount(red & kings) - Integer.bitCount(white & kings));
+        score += weights[BACK_RANK] * (Integer.bitCount(redMen & RED_BACK_ROW)
+                                       - Integer.bitCount(whiteMen & WHITE_BACK_ROW));
+        score += weights[ADVANCE] * (advance(redMen, true) - advance(whiteMen, false));
+        score += weights[CENTRE] * (Integer.bitCount(red & CENTRE_SQUARES)
+                                    - Integer.bitCount(white & CENTRE_SQUARES));
+        score += weights[MOBILITY] * (board.mobility(Colour.Red) - board.mobility(Colour.White));
+        return board.getCurrentPlayer() == Colour.Red ? score : -score;
+    }
+
+    /**
+     * Writes the features of a position from Red's point of view, so that
+     * the score for Red is the sum of each weight times its feature.
+     * Nothing is allocated.
+     *
+     * @param board the BitBoard to be scored.
+     * @param features the array to receive the features, at least SIZE long.
+     */
+    public static void getFeatures(BitBoard board, int[] features) {
+        int red = board.getRed();
+        int white = board.getWhite();
+        int kings = board.getKings();
+        int redMen = red & ~kings;
+        int whiteMen = white & ~kings;
+        features[MAN] = Integer.bitCount(redMen) - Integer.bitCount(whiteMen);
+        features[KING] = Integer.bitCount(red & kings) - Integer.bitCount(white & kings);
+        features[BACK_RANK] = Integer.bitCount(redMen & RED_BACK_ROW) - Integer.bitCount(whiteMen & WHITE_BACK_ROW);
+        features[ADVANCE] = advance(redMen, true) - advance(whiteMen, false);
+        features[CENTRE] = Integer.bitCount(red & CENTRE_SQUARES) - Integer.bitCount(white & CENTRE_SQUARES);
+        features[MOBILITY] = board.mobility(Colour.Red) - board.mobility(Colour.White);
+    }
+
+    // Returns the total number of rows the men have advanced.
+    // @param men the mask of men.
+    // @param red true if the men are Red.
+    // @return the total number of rows the men have advanced.
+    private static int advance(int men, boolean red) {
+        int total = 0;
+        for (int row = 0; row < 8; row++) {
+            int count = Integer.bitCount(men & (0xF << (row << 2)));
+            total += count * (red ? 7 - row : row);
+        }
+        return total;
+    }
+
+    /**
+     * Returns a copy of the weights.
+     *
+     * @return a copy of the weights.
+     */
+    public int[] getWeights() {
+        return weights.clone();
+    }
+
+}
@@ -0,0 +1,88 @@
+package draughts;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * A class to count frame times in buckets that double in width,
+ * so that the spread of frame times can be kept without storing them.
+ * Bucket b holds times of less than 2^b microseconds, and at least
+ * half that.
+ */
+
+public class FrameHistogram {
+
+    // The number of buckets, the last holding every time of 2^30us or more.
+    private static final int BUCKETS = 32;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Adds a frame time.
+     *
+     * @param nanos the time the frame took in nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        counts.incrementAndGet(bucket);
+    }
+
+    /**
+     * Returns the number of frames recorded.
+     *
+     * @return the number of frames recorded.
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the upper bound in microseconds of the bucket holding
+     * a percentile of the frame times, or 0 if none are recorded.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the upper bound in microseconds of the bucket holding the percentile.
+     */
+    public long getPercentile(double percentile) {
+        long count = getCount();
+        if (count == 0) return 0;
+        long rank = (long) Math.ceil((percentile / 100) * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(1, rank)) return 1L << i;
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    /**
+     * Removes every frame time.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    /**
+     * Returns a String with a line for each non-empty bucket.
+     *
+     * @return a String with a line for each non-empty bucket.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts.get(i);
+            if (count > 0) builder.append("< ").append(1L << i).append("us: ").append(count).append('\n');
+        }
+        builder.append("frames: ").append(getCount()).append(", p50 < ").append(getPercentile(50))
+               .append("us, p99 < ").append(getPercentile(99)).append("us");
+        return builder.toString();
+    }
+
+}
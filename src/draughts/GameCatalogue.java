@@ -0,0 +1,473 @@
+package draughts;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+/**
+ * An index of the saved games in a directory, kept in memory sorted by name
+ * and saved to an index file, so that the games can be listed without
+ * reading the directory. Each entry holds the name of the game, the time
+ * it was saved, the player to move and the number of each kind of Piece.
+ * The entry of a game comes from whatever SaveGame.loadGame would load:
+ * its GameJournal if it has one, as that holds every Move played up to a
+ * crash, and otherwise its saved game file.
+ * When opened, the index file is read at once. A background thread then
+ * checks it against the directory and watches the directory for games
+ * written by other processes, saving the index whenever it has changed.
+ */
+
+public class GameCatalogue implements Closeable {
+
+    /**
+     * The name of the index file in the saved games directory.
+     */
+    public static final String INDEX_FILE = "catalogue.index";
+
+    // The first four bytes of an index file, "DCAT".
+    private static final int MAGIC = 0x44434154;
+    private static final int VERSION = 1;
+    // The time in milliseconds the watcher waits for events before saving the index.
+    private static final long SAVE_DELAY = 1000;
+
+    private static GameCatalogue catalogue;
+
+    private final File directory;
+    private final File indexFile;
+    private final TreeMap<String, Entry> entries = new TreeMap<String, Entry>();
+    private final WatchService watcher;
+    private final Thread thread;
+    private final Object saving = new Object();
+    private boolean dirty;
+
+    /**
+     * Opens the catalogue of a directory, reading its index file if there is one
+     * and starting the thread that keeps it up to date.
+     *
+     * @param directory the directory holding the saved games.
+     * @throws IOException if the directory cannot be watched.
+     */
+    public GameCatalogue(File directory) throws IOException {
+        this.directory = directory;
+        indexFile = new File(directory, INDEX_FILE);
+        directory.mkdirs();
+        try {
+            load();
+        } catch (IOException e) {
+            System.err.println("Error reading game catalogue, rebuilding it. " + e);
+            entries.clear();
+        }
+        watcher = FileSystems.getDefault().newWatchService();
+        register();
+        thread = new Thread(this::watch, "game-catalogue");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the catalogue of the saved games directory, opening it the
+     * first time. The catalogue is saved when the JVM exits.
+     *
+     * @return the catalogue of the saved games directory.
+     */
+    public static synchronized GameCatalogue getCatalogue() {
+        if (catalogue == null) {
+            try {
+                catalogue = new GameCatalogue(new File(SaveGame.SAVE_DIR));
+            } catch (IOException e) {
+                System.err.println("Error opening game catalogue.");
+                System.exit(1);
+            }
+            GameCatalogue opened = catalogue;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    opened.close();
+                } catch (IOException e) {
+                    System.err.println("Error writing game catalogue.");
+                }
+            }));
+        }
+        return catalogue;
+    }
+
+    /**
+     * Returns the entries whose names start with a prefix, in order of name.
+     *
+     * @param prefix the start of the names, or "" for every entry.
+     * @param offset the number of matching entries to skip.
+     * @param limit the largest number of entries to return.
+     * @return the List of entries, at most limit long.
+     */
+    public synchronized List<Entry> find(String prefix, int offset, int limit) {
+        List<Entry> page = new ArrayList<Entry>();
+        Iterator<Entry> matches = matching(prefix).values().iterator();
+        for (int i = 0; i < offset && matches.hasNext(); i++) {
+            matches.next();
+        }
+        while (page.size() < limit && matches.hasNext()) {
+            page.add(matches.next());
+        }
+        return page;
+    }
+
+    /**
+     * Returns the number of entries whose names start with a prefix.
+     *
+     * @param prefix the start of the names, or "" for every entry.
+     * @return the number of entries whose names start with the prefix.
+     */
+    public synchronized int count(String prefix) {
+        if (prefix.isEmpty()) return entries.size();
+        return matching(prefix).size();
+    }
+
+    /**
+     * Returns the entry of a game, or null if there is none.
+     *
+     * @param name the name of the game.
+     * @return the entry of the game, or null if there is none.
+     */
+    public synchronized Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * Adds or replaces the entry of a game that has just been saved.
+     * If the game has a GameJournal, the entry is made from the journal
+     * instead, as that is what SaveGame.loadGame would load.
+     *
+     * @param name the name of the game.
+     * @param board the BitBoard holding the position saved.
+     * @param modified the time the saved game file was written.
+     */
+    public void put(String name, BitBoard board, long modified) {
+        if (new File(directory, name + GameJournal.FILE_EXT).exists()) {
+            update(name + SaveGame.FILE_EXT);
+            return;
+        }
+        synchronized (this) {
+            entries.put(name, new Entry(name, modified, false, board));
+            dirty = true;
+        }
+    }
+
+    // Returns the entries whose names start with a prefix, as a view of the map.
+    // @param prefix the start of the names.
+    // @return the entries whose names start with the prefix.
+    private SortedMap<String, Entry> matching(String prefix) {
+        if (prefix.isEmpty()) return entries;
+        return entries.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+
+    /**
+     * Writes the index file if the catalogue has changed since it was read
+     * or last written. The file is replaced atomically.
+     *
+     * @throws IOException if the index file cannot be written.
+     */
+    public void save() throws IOException {
+        synchronized (saving) {
+            List<Entry> snapshot;
+            synchronized (this) {
+                if (!dirty) return;
+                snapshot = new ArrayList<Entry>(entries.values());
+                dirty = false;
+            }
+            File temp = new File(indexFile.getPath() + ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeInt(snapshot.size());
+                    for (Entry entry : snapshot) {
+                        entry.write(out);
+                    }
+                }
+                Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // The index is still unsaved, so the next save tries again.
+                synchronized (this) {
+                    dirty = true;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Stops watching the directory and writes the index file if it has changed.
+     *
+     * @throws IOException if the index file cannot be written.
+     */
+    public void close() throws IOException {
+        thread.interrupt();
+        watcher.close();
+        save();
+    }
+
+    // Reads the index file, if there is one.
+    private void load() throws IOException {
+        if (!indexFile.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("Not a game catalogue.");
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = Entry.read(in);
+                entries.put(entry.name, entry);
+            }
+        }
+    }
+
+    // Registers the directory with the WatchService, creating it if it has gone.
+    private void register() throws IOException {
+        directory.mkdirs();
+        directory.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    // Checks the index against the directory, then updates it from the
+    // events of the WatchService until closed, saving it when no events
+    // have arrived for a while. An error is reported and the thread goes
+    // on, so a failed scan is tried again and a failed save is tried again
+    // at the next quiet poll. If the directory can no longer be watched,
+    // it is registered again and scanned for the changes that were missed.
+    private void watch() {
+        boolean registered = true;
+        boolean scanned = false;
+        while (true) {
+            try {
+                if (!registered) {
+                    register();
+                    registered = true;
+                }
+                if (!scanned) {
+                    scan();
+                    scanned = true;
+                }
+                WatchKey key = watcher.poll(SAVE_DELAY, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    save();
+                    continue;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) scanned = false;
+                    else update(((Path) event.context()).toString());
+                }
+                if (!key.reset()) {
+                    registered = false;
+                    scanned = false;
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // The catalogue has been closed.
+                return;
+            } catch (IOException e) {
+                System.err.println("Error updating game catalogue. " + e);
+                try {
+                    Thread.sleep(SAVE_DELAY);
+                } catch (InterruptedException stop) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Updates every entry whose file has changed since it was indexed,
+    // and removes the entries of games that no longer exist.
+    private void scan() throws IOException {
+        Set<String> seen = new HashSet<String>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory.toPath())) {
+            for (Path file : files) {
+                String name = gameName(file.getFileName().toString());
+                if (name != null && seen.add(name)) update(name + SaveGame.FILE_EXT);
+            }
+        }
+        synchronized (this) {
+            dirty |= entries.keySet().retainAll(seen);
+        }
+    }
+
+    // Updates the entry of the game a file belongs to, if the file has
+    // changed since the entry was made.
+    // @param fileName the name of a file in the directory.
+    private void update(String fileName) {
+        String name = gameName(fileName);
+        if (name == null) return;
+        File save = new File(directory, name + SaveGame.FILE_EXT);
+        File journal = new File(directory, name + GameJournal.FILE_EXT);
+        boolean fromJournal = journal.exists();
+        long modified = (fromJournal ? journal : save).lastModified();
+        synchronized (this) {
+            Entry entry = entries.get(name);
+            if (modified == 0) {
+                if (entries.remove(name) != null) dirty = true;
+                return;
+            }
+            if (entry != null && entry.modified == modified && entry.fromJournal == fromJournal) return;
+        }
+        try {
+            BitBoard board = null;
+            if (fromJournal) {
+                try {
+                    board = GameJournal.replay(journal);
+                } catch (Exception e) {
+                    // As in SaveGame.loadGame, a journal that cannot be replayed gives way to the saved game.
+                    fromJournal = false;
+                    modified = save.lastModified();
+                }
+            }
+            if (board == null) board = SaveGame.readGame(save);
+            synchronized (this) {
+                entries.put(name, new Entry(name, modified, fromJournal, board));
+                dirty = true;
+            }
+        } catch (Exception e) {
+            // The file is being written or is not a game, so it is left out until it changes.
+        }
+    }
+
+    // Returns the name of the game a file belongs to, or null if it is not
+    // a saved game or a GameJournal.
+    // @param fileName the name of the file.
+    // @return the name of the game, or null.
+    private static String gameName(String fileName) {
+        if (fileName.endsWith(SaveGame.FILE_EXT)) {
+            return fileName.substring(0, fileName.length() - SaveGame.FILE_EXT.length());
+        }
+        if (fileName.endsWith(GameJournal.FILE_EXT)) {
+            return fileName.substring(0, fileName.length() - GameJournal.FILE_EXT.length());
+        }
+        return null;
+    }
+
+    /**
+     * The entry of one game in the catalogue.
+     */
+    public static class Entry {
+
+        private final String name;
+        private final long modified;
+        private final boolean fromJournal;
+        private final Colour currentPlayer;
+        private final int redPieces;
+        private final int whitePieces;
+        private final int redKings;
+        private final int whiteKings;
+
+        // Constructs a new Entry object from a position.
+        // @param name the name of the game.
+        // @param modified the time the file was written.
+        // @param fromJournal true if the position was replayed from a GameJournal.
+        // @param board the BitBoard holding the position.
+        Entry(String name, long modified, boolean fromJournal, BitBoard board) {
+            this(name, modified, fromJournal, board.getCurrentPlayer(), Integer.bitCount(board.getRed()),
+                 Integer.bitCount(board.getWhite()), Integer.bitCount(board.getRed() & board.getKings()),
+                 Integer.bitCount(board.getWhite() & board.getKings()));
+        }
+
+        // Constructs a new Entry object from the fields of an index file.
+        // @param name the name of the game.
+        // @param modified the time the file was written.
+        // @param fromJournal true if the position was replayed from a GameJournal.
+        // @param currentPlayer the Colour of the player to move.
+        // @param redPieces the number of red Pieces.
+        // @param whitePieces the number of white Pieces.
+        // @param redKings the number of red kings.
+        // @param whiteKings the number of white kings.
+        private Entry(String name, long modified, boolean fromJournal, Colour currentPlayer,
+                      int redPieces, int whitePieces, int redKings, int whiteKings) {
+            this.name = name;
+            this.modified = modified;
+            this.fromJournal = fromJournal;
+            this.currentPlayer = currentPlayer;
+            this.redPieces = redPieces;
+            this.whitePieces = whitePieces;
+            this.redKings = redKings;
+            this.whiteKings = whiteKings;
+        }
+
+        // Writes the Entry to an index file.
+        // @param out the stream to write to.
+        private void write(DataOutputStream out) throws IOException {
+            out.writeUTF(name);
+            out.writeLong(modified);
+            out.writeBoolean(fromJournal);
+            out.writeBoolean(currentPlayer.equals(Colour.White));
+            out.writeByte(redPieces);
+            out.writeByte(whitePieces);
+            out.writeByte(redKings);
+            out.writeByte(whiteKings);
+        }
+
+        // Reads an Entry from an index file.
+        // @param in the stream to read from.
+        // @return the Entry read.
+        private static Entry read(DataInputStream in) throws IOException {
+            return new Entry(in.readUTF(), in.readLong(), in.readBoolean(),
+                             in.readBoolean() ? Colour.White : Colour.Red,
+                             in.readByte(), in.readByte(), in.readByte(), in.readByte());
+        }
+
+        /**
+         * Returns the name of the game.
+         *
+         * @return the name of the game.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the time the game was last written, in milliseconds since the epoch.
+         *
+         * @return the time the game was last written.
+         */
+        public long getModified() {
+            return modified;
+        }
+
+        /**
+         * Returns the Colour of the player to move.
+         *
+         * @return the Colour of the player to move.
+         */
+        public Colour getCurrentPlayer() {
+            return currentPlayer;
+        }
+
+        /**
+         * Returns the number of Pieces of a player, including kings.
+         *
+         * @param colour the Colour of the player.
+         * @return the number of Pieces of the player.
+         */
+        public int getPieces(Colour colour) {
+            return colour.equals(Colour.Red) ? redPieces : whitePieces;
+        }
+
+        /**
+         * Returns the number of kings of a player.
+         *
+         * @param colour the Colour of the player.
+         * @return the number of kings of the player.
+         */
+        public int getKings(Colour colour) {
+            return colour.equals(Colour.Red) ? redKings : whiteKings;
+        }
+
+        /**
+         * Returns a String describing the game for a list of games.
+         *
+         * @return a String describing the game.
+         */
+        @Override
+        public String toString() {
+            return String.format("%s - %s to move, Red %d (%dK), White %d (%dK), %tF %<tR",
+                                 name, currentPlayer, redPieces, redKings, whitePieces, whiteKings,
+                                 new Date(modified));
+        }
+
+    }
+
+}
@@ -0,0 +1,103 @@
+package draughts;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A class to play a game as a state machine, asking an AsyncPlayer for
+ * each Move and advancing when the Move arrives, instead of blocking a
+ * thread in DraughtsModel.start. The game advances on whichever thread
+ * completes the Move, and Moves that are already chosen are played in a
+ * loop rather than by recursion, so long games cannot overflow the stack.
+ */
+
+public class GameDriver {
+
+    private final DraughtsModel model;
+    private final AsyncPlayer player;
+    private final CompletableFuture<Colour> result = new CompletableFuture<Colour>();
+
+    /**
+     * Constructs a new GameDriver object.
+     *
+     * @param model the game to be played.
+     * @param player the AsyncPlayer asked for the Moves of both Colours.
+     */
+    public GameDriver(DraughtsModel model, AsyncPlayer player) {
+        this.model = model;
+        this.player = player;
+    }
+
+    /**
+     * Starts the game and returns a future completed with the winner,
+     * or with null if the game is a draw. The future is completed
+     * exceptionally if a Player fails or returns a Move that is not valid.
+     *
+     * @return a future completed with the winner of the game.
+     */
+    public CompletableFuture<Colour> start() {
+        advance(null);
+        return result;
+    }
+
+    /**
+     * Returns the game being played.
+     *
+     * @return the game being played.
+     */
+    public DraughtsModel getModel() {
+        return model;
+    }
+
+    // Plays Moves for as long as they are already available, then waits
+    // for the next one without holding the thread.
+    // @param validMoves the Moves of the turn in progress, or null at the start of a turn.
+    private void advance(Set<Move> validMoves) {
+        try {
+            while (true) {
+                if (validMoves == null) {
+                    if (model.isOver()) {
+                        result.complete(model.getWinner());
+                        return;
+                    }
+                    validMoves = model.beginTurn();
+                }
+                CompletableFuture<Move> request = player.request(validMoves);
+                if (!request.isDone()) {
+                    Set<Move> waiting = validMoves;
+                    request.whenComplete((move, error) -> {
+                        if (error != null) result.completeExceptionally(error);
+                        else resume(waiting, move);
+                    });
+                    return;
+                }
+                validMoves = play(validMoves, request.join());
+            }
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+        }
+    }
+
+    // Plays a Move that has arrived and carries on with the game.
+    // @param validMoves the Moves the Move was chosen from.
+    // @param move the Move chosen.
+    private void resume(Set<Move> validMoves, Move move) {
+        try {
+            advance(play(validMoves, move));
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    // Plays a Move, returning the Moves continuing the turn, or null if the turn is over.
+    // @param validMoves the Moves the Move was chosen from.
+    // @param move the Move chosen.
+    // @return the Moves continuing the turn, or null if the turn is over.
+    // @throws IllegalArgumentException if the Move is not one of the valid Moves.
+    private Set<Move> play(Set<Move> validMoves, Move move) {
+        if (move == null || !validMoves.contains(move)) throw new IllegalArgumentException("Not a valid Move.");
+        Set<Move> next = model.playStep(move);
+        return next.isEmpty() ? null : next;
+    }
+
+}
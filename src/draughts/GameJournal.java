@@ -0,0 +1,339 @@
+package draughts;
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.function.*;
+
+/**
+ * A class to record each Move of a game as it is played, so that the
+ * game survives a crash and its history is kept.
+ * A journal starts with the starting position as a SaveGame record,
+ * followed by two bytes for each Move: the square moved from and the
+ * square moved to, in the numbering of BitBoard.
+ * Moves are appended to a buffer and a background thread writes them and
+ * forces them to disk in batches, so one fsync covers every Move
+ * appended since the last one (group commit).
+ */
+
+public class GameJournal implements Closeable {
+
+    /**
+     * The file extension for game journals.
+     */
+    public static final String FILE_EXT = ".journal";
+
+    /**
+     * The result of a game won by Red, as returned by readResult().
+     */
+    public static final int RED_WIN = 2;
+
+    /**
+     * The result of a drawn game, as returned by readResult().
+     */
+    public static final int DRAW = 1;
+
+    /**
+     * The result of a game won by White, as returned by readResult().
+     */
+    public static final int WHITE_WIN = 0;
+
+    /**
+     * The result of a game that is not over, as returned by readResult().
+     */
+    public static final int UNFINISHED = -1;
+
+    // The number of bytes in each Move entry.
+    private static final int ENTRY_SIZE = 2;
+    // The time in milliseconds the committer waits for more Moves to join a batch.
+    private static final long COMMIT_INTERVAL = 20;
+    // The number of bytes buffered before append waits for the committer.
+    private static final int BUFFER_SIZE = 4096;
+
+    private final FileChannel channel;
+    private final Thread committer;
+    private ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE);
+    private ByteBuffer writing = ByteBuffer.allocate(BUFFER_SIZE);
+    private long appended;
+    private long committed;
+    private long commits;
+    private boolean syncRequested;
+    private boolean closed;
+    private IOException error;
+
+    // Constructs a new GameJournal object writing to the end of a channel.
+    // @param channel the channel of the journal file.
+    // @param name the name of the game.
+    private GameJournal(FileChannel channel, String name) {
+        this.channel = channel;
+        committer = new Thread(this::commit, "journal-" + name);
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Returns the journal file of a game in the saved games folder.
+     *
+     * @param gameName the name of the game.
+     * @return the journal file of a game.
+     */
+    public static File getFile(String gameName) {
+        return new File(SaveGame.SAVE_DIR + "/" + gameName + FILE_EXT);
+    }
+
+    /**
+     * Opens the journal of a game to append Moves played from a position.
+     * An existing journal is continued if replaying it reaches the position,
+     * otherwise a new journal is started with the position.
+     *
+     * @param file the journal file.
+     * @param board the position Moves will be played from.
+     * @return the open GameJournal.
+     * @throws IOException if the journal cannot be opened or written.
+     */
+    public static GameJournal open(File file, BitBoard board) throws IOException {
+        Path path = file.toPath();
+        if (file.exists()) {
+            try {
+                int[] counts = new int[2];
+                BitBoard end = replay(file, null, counts);
+                if (end.getKey() == board.getKey()) {
+                    FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+                    channel.truncate(counts[0]);
+                    channel.position(counts[0]);
+                    return new GameJournal(channel, file.getName());
+                }
+            } catch (IllegalArgumentException e) {
+                // The journal is not readable, so it is started again.
+            }
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(SaveGame.RECORD_SIZE);
+        SaveGame.writeRecord(header, board);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(true);
+        return new GameJournal(channel, file.getName());
+    }
+
+    /**
+     * Appends a Move to the journal without waiting for it to reach the disk.
+     * Moves appended after the journal is closed are ignored.
+     *
+     * @param from the square the Piece moved from.
+     * @param to the square the Piece moved to.
+     */
+    public synchronized void append(int from, int to) {
+        while (!pending.hasRemaining() && !closed) {
+            waitForCommit();
+        }
+        if (closed) return;
+        pending.putShort((short) (from | (to << 5)));
+        appended++;
+        notifyAll();
+    }
+
+    /**
+     * Waits until every Move appended so far has been forced to disk.
+     *
+     * @throws IOException if a Move could not be written.
+     */
+    public synchronized void sync() throws IOException {
+        long target = appended;
+        syncRequested = true;
+        notifyAll();
+        while (committed < target && error == null) {
+            waitForCommit();
+        }
+        if (error != null) throw error;
+    }
+
+    /**
+     * Returns the number of Moves forced to disk so far.
+     *
+     * @return the number of Moves forced to disk so far.
+     */
+    public synchronized long getCommitted() {
+        return committed;
+    }
+
+    /**
+     * Returns the number of times the journal has been forced to disk,
+     * which is less than the number of Moves when commits are grouped.
+     *
+     * @return the number of times the journal has been forced to disk.
+     */
+    public synchronized long getCommits() {
+        return commits;
+    }
+
+    /**
+     * Forces the remaining Moves to disk and closes the journal.
+     *
+     * @throws IOException if a Move could not be written.
+     */
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+            try {
+                committer.join();
+            } catch (InterruptedException e) {
+                System.err.println("Interrupted from waiting for the journal to close.");
+            }
+            channel.close();
+        }
+    }
+
+    // Waits to be notified by the committer or an appender.
+    private void waitForCommit() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            System.err.println("Interrupted from waiting for the journal.");
+        }
+    }
+
+    // Writes the pending Moves in batches until the journal is closed.
+    private void commit() {
+        while (true) {
+            long target;
+            synchronized (this) {
+                while (pending.position() == 0 && !closed) {
+                    waitForCommit();
+                }
+                if (pending.position() == 0) return;
+                // Give other Moves a chance to join the batch unless a caller is waiting.
+                long deadline = System.currentTimeMillis() + COMMIT_INTERVAL;
+                long left = COMMIT_INTERVAL;
+                while (!syncRequested && !closed && pending.hasRemaining() && left > 0) {
+                    try {
+                        wait(left);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                    left = deadline - System.currentTimeMillis();
+                }
+                syncRequested = false;
+                ByteBuffer batch = pending;
+                pending = writing;
+                writing = batch;
+                target = appended;
+                notifyAll();
+            }
+            IOException failure = null;
+            try {
+                writing.flip();
+                while (writing.hasRemaining()) {
+                    channel.write(writing);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                failure = e;
+            }
+            writing.clear();
+            synchronized (this) {
+                if (failure != null) error = failure;
+                else committed = target;
+                commits++;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns the position reached by replaying a journal. Entries
+     * after the last complete, legal Move are ignored.
+     *
+     * @param file the journal file.
+     * @return the position reached by replaying a journal.
+     * @throws IOException if the journal cannot be read.
+     * @throws IllegalArgumentException if the journal has no starting position.
+     */
+    public static BitBoard replay(File file) throws IOException {
+        return replay(file, null, new int[2]);
+    }
+
+    /**
+     * Returns the packed Moves recorded in a journal, in the order they were played.
+     *
+     * @param file the journal file.
+     * @return the packed Moves recorded in a journal.
+     * @throws IOException if the journal cannot be read.
+     * @throws IllegalArgumentException if the journal has no starting position.
+     */
+    public static int[] readMoves(File file) throws IOException {
+        List<Integer> moves = new ArrayList<Integer>();
+        replay(file, (board, move) -> moves.add(move), new int[2]);
+        int[] packed = new int[moves.size()];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = moves.get(i);
+        }
+        return packed;
+    }
+
+    /**
+     * Replays a journal, passing each position and the packed Move played
+     * from it to a visitor, and returns the result of the game: RED_WIN,
+     * DRAW or WHITE_WIN, or UNFINISHED if the journal ends before the game
+     * is over. As in DraughtsModel, a game is over when the player to move
+     * has no Moves, or is a draw once the maximum number of turns has been
+     * played. The result is a score for Red, so 2 - result is White's.
+     *
+     * @param file the journal file.
+     * @param maxTurns the number of turns after which the game was a draw, or 0 for no limit.
+     * @param visitor the visitor given each position before its Move is played, or null.
+     * @return the result of the game.
+     * @throws IOException if the journal cannot be read.
+     * @throws IllegalArgumentException if the journal has no starting position.
+     */
+    public static int readResult(File file, int maxTurns, ObjIntConsumer<BitBoard> visitor) throws IOException {
+        int[] counts = new int[2];
+        BitBoard board = replay(file, visitor, counts);
+        if (!board.hasMoves()) return board.getCurrentPlayer() == Colour.Red ? WHITE_WIN : RED_WIN;
+        if (maxTurns != 0 && counts[1] >= maxTurns && board.getJumping() < 0) return DRAW;
+        return UNFINISHED;
+    }
+
+    // Replays a journal, passing each position and its Move to a visitor.
+    // @param file the journal file.
+    // @param visitor the visitor given each position before its Move is played, or null.
+    // @param counts the array to receive the number of valid bytes and of whole turns.
+    // @return the position reached by replaying the journal.
+    private static BitBoard replay(File file, ObjIntConsumer<BitBoard> visitor, int[] counts) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (!SaveGame.isRecord(buffer)) throw new IllegalArgumentException();
+        BitBoard board = SaveGame.readRecord(buffer);
+        int[] list = new int[BitBoard.MAX_MOVES];
+        int turns = 0;
+        while (buffer.remaining() >= ENTRY_SIZE) {
+            int entry = buffer.getShort();
+            int from = entry & 0x1F;
+            int to = (entry >> 5) & 0x1F;
+            int count = board.generateMoves(list);
+            int move = 0;
+            for (int i = 0; i < count; i++) {
+                if (BitBoard.getFrom(list[i]) == from && BitBoard.getTo(list[i]) == to) move = list[i];
+            }
+            if (move == 0) {
+                buffer.position(buffer.position() - ENTRY_SIZE);
+                break;
+            }
+            if (visitor != null) visitor.accept(board, move);
+            if (!board.play(move)) turns++;
+        }
+        counts[0] = buffer.position();
+        counts[1] = turns;
+        return board;
+    }
+
+}
@@ -0,0 +1,441 @@
+package draughts;
+
+import java.util.*;
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A headless server hosting many games at once over a line protocol.
+ * Each connection is one game, in which the client plays Red against a
+ * Player on the server. One thread reads and writes every connection
+ * through a Selector, and each game is played by a GameDriver, so a game
+ * waiting for its client holds no thread. The server's Players choose
+ * their Moves on a pool with a thread for each processor. There is one
+ * Player, with its own Engine and TranspositionTable, for each thread,
+ * and a game borrows one only whilst it chooses a Move, so a game holds
+ * nothing but its DraughtsModel.
+ * Squares are numbered as in BitBoard, from 0 to 31.
+ * Server to client:
+ * MOVES from-to from-to ...   the Moves the client may choose from
+ * PLAYED from-to              a Move played by the server's Player
+ * ERROR message               the last line was not understood or not valid
+ * OVER Red|White|Draw         the game is over
+ * Client to server:
+ * MOVE from-to
+ * Usage: GameServer [-port n] [-opponent random|engine:...|mcts:...] [-maxTurns n]
+ */
+
+public class GameServer implements Runnable {
+
+    /**
+     * The default port the server listens on.
+     */
+    public static final int DEFAULT_PORT = 7777;
+
+    // The number of connections waiting to be accepted.
+    private static final int BACKLOG = 4096;
+    // The size of the buffer each connection reads into.
+    private static final int READ_SIZE = 256;
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final Queue<Session> writers = new ConcurrentLinkedQueue<Session>();
+    private final ExecutorService workers;
+    private final BlockingQueue<Player> players = new LinkedBlockingQueue<Player>();
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final AtomicLong games = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+    private final AtomicLong seeds = new AtomicLong();
+    private int maxTurns = 200;
+    private volatile boolean running = true;
+
+    /**
+     * Constructs a new GameServer object listening on a port.
+     *
+     * @param port the port to listen on, or 0 for any free port.
+     * @param opponent the description of the server's Player, as for Tournament.
+     * @throws IOException if the port cannot be opened.
+     * @throws IllegalArgumentException if the opponent is not recognised.
+     */
+    public GameServer(int port, String opponent) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        Map<String, Object> opened = new HashMap<String, Object>();
+        for (int i = 0; i < threads; i++) {
+            players.add(Tournament.createPlayer(opponent, seeds.incrementAndGet(), opened));
+        }
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "game-server-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets the number of turns after which a game is a draw.
+     *
+     * @param maxTurns the number of turns after which a game is a draw.
+     */
+    public void setMaxTurns(int maxTurns) {
+        this.maxTurns = maxTurns;
+    }
+
+    /**
+     * Returns the port the server is listening on.
+     *
+     * @return the port the server is listening on.
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Returns the number of games being played.
+     *
+     * @return the number of games being played.
+     */
+    public int getSessions() {
+        return sessions.get();
+    }
+
+    /**
+     * Returns the number of games finished.
+     *
+     * @return the number of games finished.
+     */
+    public long getGames() {
+        return games.get();
+    }
+
+    /**
+     * Returns the number of games abandoned before they were over, such
+     * as when the client disconnected.
+     *
+     * @return the number of games abandoned.
+     */
+    public long getAbandoned() {
+        return abandoned.get();
+    }
+
+    /**
+     * Stops the server after the current pass of the event loop.
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Accepts connections and reads and writes lines until stopped.
+     */
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                Session session;
+                while ((session = writers.poll()) != null) {
+                    session.flush();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                    else if (key.isReadable()) ((Session) key.attachment()).read();
+                    if (key.isValid() && key.isWritable()) ((Session) key.attachment()).flush();
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Session) ((Session) key.attachment()).close();
+            }
+            selector.close();
+            server.close();
+            workers.shutdown();
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+            for (Player player : players) {
+                player.shutdown();
+            }
+        } catch (IOException e) {
+            System.err.println("Error in game server. " + e);
+        } catch (InterruptedException e) {
+            System.err.println("Interrupted whilst stopping the game server.");
+        }
+    }
+
+    // Returns the Move chosen for a game by a Player borrowed from the pool,
+    // which is returned to the pool as soon as it has chosen.
+    // Called on a worker thread, so a Player is always free.
+    // @param model the game a Move is chosen for.
+    // @param validMoves the Set of valid Moves.
+    // @return the Move chosen.
+    private Move choose(DraughtsModel model, Set<Move> validMoves) {
+        Player player;
+        try {
+            player = players.take();
+        } catch (InterruptedException e) {
+            throw new CompletionException(e);
+        }
+        try {
+            player.setModel(model);
+            return player.notify(validMoves);
+        } finally {
+            player.setModel(null);
+            players.add(player);
+        }
+    }
+
+    // Accepts the waiting connections, starting a game for each.
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Session session = new Session(channel);
+            session.key = channel.register(selector, SelectionKey.OP_READ, session);
+            sessions.incrementAndGet();
+            session.start();
+        }
+    }
+
+    /**
+     * Returns a Move as from-to squares.
+     *
+     * @param move the Move to be formatted, before it is played.
+     * @return the Move as from-to squares.
+     */
+    public static String format(Move move) {
+        int from = BitBoard.square(move.piece.getX(), move.piece.getY());
+        int to = BitBoard.square((int) move.destination.getX(), (int) move.destination.getY());
+        return from + "-" + to;
+    }
+
+    /**
+     * Runs a server until the process is stopped, printing the number of
+     * games every ten seconds.
+     *
+     * @param args the arguments provided by the user.
+     */
+    public static void main(String[] args) {
+        int port = DEFAULT_PORT;
+        String opponent = "random";
+        int maxTurns = 200;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-port")) port = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-opponent")) opponent = args[i + 1];
+            else if (args[i].equals("-maxTurns")) maxTurns = Integer.parseInt(args[i + 1]);
+        }
+        try {
+            GameServer server = new GameServer(port, opponent);
+            server.setMaxTurns(maxTurns);
+            Thread loop = new Thread(server, "game-server");
+            loop.start();
+            System.out.println("Listening on port " + server.getPort() + ", opponent " + opponent);
+            while (loop.isAlive()) {
+                loop.join(10000);
+                System.out.println("Sessions: " + server.getSessions() + " Games finished: " + server.getGames()
+                                   + " Abandoned: " + server.getAbandoned());
+            }
+        } catch (Exception e) {
+            System.err.println("Usage: GameServer [-port n] [-opponent random|engine:...|mcts:...] [-maxTurns n]. " + e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * A connection and its game, played by a GameDriver. A game waiting for
+     * the client holds no thread: the event loop completes the waiting
+     * future when the client's Move arrives, and the game advances on it.
+     */
+    private class Session implements AsyncPlayer {
+
+        private final SocketChannel channel;
+        private final ByteBuffer input = ByteBuffer.allocate(READ_SIZE);
+        private final StringBuilder line = new StringBuilder();
+        private final AsyncPlayer opponent;
+        private final GameDriver driver;
+        private SelectionKey key;
+        private ByteBuffer output = ByteBuffer.allocate(READ_SIZE);
+        private CompletableFuture<Move> waiting;
+        private Set<Move> waitingMoves;
+        private boolean closing;
+        private boolean closed;
+
+        // Constructs a new Session object for a connection.
+        // @param channel the connection to the client.
+        Session(SocketChannel channel) {
+            this.channel = channel;
+            DraughtsModel model = new DraughtsModel("session" + seeds.incrementAndGet(), null);
+            model.setMaxTurns(maxTurns);
+            opponent = validMoves -> CompletableFuture.supplyAsync(() -> choose(model, validMoves), workers);
+            driver = new GameDriver(model, this);
+        }
+
+        // Starts the game, sending the result and closing the connection when it ends.
+        void start() {
+            driver.start().whenComplete((winner, error) -> {
+                if (error == null) {
+                    send("OVER " + (winner == null ? "Draw" : winner.toString()));
+                    games.incrementAndGet();
+                } else {
+                    abandoned.incrementAndGet();
+                }
+                synchronized (this) {
+                    closing = true;
+                }
+                requestFlush();
+            });
+        }
+
+        // Returns a future for the client's Move when it is Red's turn, and
+        // otherwise for the server Player's Move, which is sent to the client.
+        // @param validMoves the Set of valid Moves.
+        // @return a future completed with the Move chosen.
+        public CompletableFuture<Move> request(Set<Move> validMoves) {
+            if (driver.getModel().getCurrentPlayer().equals(Colour.White)) {
+                return opponent.request(validMoves).thenApply(move -> {
+                    send("PLAYED " + format(move));
+                    return move;
+                });
+            }
+            StringBuilder moves = new StringBuilder("MOVES");
+            for (Move move : validMoves) {
+                moves.append(' ').append(format(move));
+            }
+            CompletableFuture<Move> future = new CompletableFuture<Move>();
+            synchronized (this) {
+                if (closed) {
+                    future.completeExceptionally(new IllegalStateException("Session closed."));
+                    return future;
+                }
+                waiting = future;
+                waitingMoves = validMoves;
+            }
+            send(moves.toString());
+            return future;
+        }
+
+        // Completes the waiting future with the Move named by a line from
+        // the client, or answers with an error. Called on the event loop thread.
+        // @param request the line from the client.
+        private void handle(String request) {
+            CompletableFuture<Move> future = null;
+            Move chosen = null;
+            synchronized (this) {
+                if (waiting != null && request.startsWith("MOVE ")) {
+                    String name = request.substring(5).trim();
+                    for (Move move : waitingMoves) {
+                        if (format(move).equals(name)) chosen = move;
+                    }
+                    if (chosen != null) {
+                        future = waiting;
+                        waiting = null;
+                        waitingMoves = null;
+                    }
+                }
+            }
+            if (future != null) future.complete(chosen);
+            else send("ERROR not a valid move: " + request);
+        }
+
+        // Reads the waiting bytes, handling each complete line.
+        void read() {
+            try {
+                input.clear();
+                int count = channel.read(input);
+                if (count < 0) {
+                    close();
+                    return;
+                }
+                input.flip();
+                while (input.hasRemaining()) {
+                    char c = (char) input.get();
+                    if (c == '\n') {
+                        String request = line.toString().trim();
+                        line.setLength(0);
+                        handle(request);
+                    } else if (line.length() < READ_SIZE) {
+                        line.append(c);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        // Queues a line to be written by the event loop.
+        // @param text the line without its line break.
+        void send(String text) {
+            byte[] bytes = (text + "\n").getBytes(StandardCharsets.US_ASCII);
+            synchronized (this) {
+                if (output.remaining() < bytes.length) {
+                    ByteBuffer larger = ByteBuffer.allocate(Math.max(output.capacity() * 2,
+                                                                     output.position() + bytes.length));
+                    output.flip();
+                    larger.put(output);
+                    output = larger;
+                }
+                output.put(bytes);
+            }
+            requestFlush();
+        }
+
+        // Asks the event loop to write this connection's waiting lines.
+        private void requestFlush() {
+            writers.add(this);
+            selector.wakeup();
+        }
+
+        // Writes as much of the waiting output as the connection takes,
+        // closing it once the game is over and everything is written.
+        // Called on the event loop thread.
+        synchronized void flush() {
+            if (closed) return;
+            try {
+                output.flip();
+                channel.write(output);
+                output.compact();
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (output.position() > 0) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } else if (closing) {
+                close();
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        // Closes the connection and abandons the game if it is waiting for the client.
+        void close() {
+            CompletableFuture<Move> future;
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+                key.cancel();
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing connection. " + e);
+                }
+                sessions.decrementAndGet();
+                future = waiting;
+                waiting = null;
+            }
+            if (future != null) future.completeExceptionally(new IllegalStateException("Session closed."));
+        }
+
+    }
+
+}
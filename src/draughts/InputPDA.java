@@ -1,16 +1,16 @@
 package draughts;
 
-import java.util.*;
-import java.awt.*;
-    
 /**
  * A class to act as a DPDA to work out when there is enough information for a move.
+ * The stack holds at most two clicks, each as y << 3 | x in an int, so
+ * taking a click allocates nothing.
  */
 
 public class InputPDA {
   
     private DraughtsModel model;
-    private Stack<Point> stack;
+    private int[] stack = new int[2];
+    private int size;
     private int currentState = 1;
     
     /**
@@ -20,20 +20,19 @@ public class InputPDA {
      */
     public InputPDA(DraughtsModel model) {
         this.model = model;
-        stack = new Stack<Point>();
     }
     
     // Returns the top of the stack.
-    // @return the top of the stack.
-    private Point popStack() {
-        Point point = stack.pop();
-        return point;
+    // @return the top of the stack, as y << 3 | x.
+    private int popStack() {
+        return stack[--size];
     }
     
-    // Pushes a Point onto the top of the stack.
-    // @param point the Point to be pushed to the top of the stack.
-    private void pushStack(Point point) {
-        stack.push(point);
+    // Pushes a click onto the top of the stack.
+    // @param x the x coordinate of the click.
+    // @param y the y coordinate of the click.
+    private void pushStack(int x, int y) {
+        stack[size++] = (y << 3) | x;
     }
     
     /**
@@ -45,28 +44,29 @@ public class InputPDA {
      * @param y the y coordinate of the click.
      */
     public void transition(Colour player, int x, int y) {
+        if (0 > x || x > 7 || 0 > y || y > 7) return;
         Piece piece = model.getPiece(x, y);
         switch(currentState) {
             case 1:
                 if (piece != null && piece.getColour().equals(player)) {
-                    pushStack(new Point(x, y));
+                    pushStack(x, y);
                     currentState = 2;
                 }
                 break;
             case 2:
                 if (piece != null && piece.getColour().equals(player)) {
                     popStack();
-                    pushStack(new Point(x, y));
+                    pushStack(x, y);
                     currentState = 2;
                 } else if (piece == null) {
-                    pushStack(new Point(x, y));
+                    pushStack(x, y);
                     currentState = 3;
                 }
                 break;
             default:
-                stack.clear();
+                size = 0;
                 if (piece != null && piece.getColour().equals(player)) {
-                    pushStack(new Point(x, y));
+                    pushStack(x, y);
                     currentState = 2;
                 } else {
                     currentState = 1;
@@ -89,21 +89,22 @@ public class InputPDA {
      * Resets the DPDA to its initial state and empties the stack.
      */
     public void reset() {
-        stack.clear();
+        size = 0;
         currentState = 1;
     }
     
     /**
-     * Returns a Move from the contents of the stack.
+     * Returns the packed Move from the contents of the stack, as by
+     * BitBoard.valueOf. Nothing is allocated.
      *
-     * @param colour the colour of the player whose Move is being made.
-     * @return the Move for the specified player.
+     * @return the packed Move, or -1 if it is not a single step or jump.
      */
-    public Move createMove(Colour colour) {
-        Point destination = popStack();
-        Point position = popStack();
-        Piece piece = model.getPiece((int) position.getX(), (int) position.getY());
-        return new Move(piece, (int) destination.getX(), (int) destination.getY());
+    public int createPackedMove() {
+        int destination = popStack();
+        int position = popStack();
+        Piece piece = model.getPiece(position & 7, position >> 3);
+        if (piece == null) return -1;
+        return BitBoard.valueOf(piece, destination & 7, destination >> 3);
     }
     
 }
\ No newline at end of file
@@ -0,0 +1,105 @@
+package draughts;
+
+import javax.swing.*;
+import javax.swing.event.*;
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+
+/**
+ * A view to choose a saved game from the GameCatalogue a page at a time,
+ * with a field to search for games whose names start with some text.
+ */
+
+public class LoadGameView extends JPanel {
+
+    private static final long serialVersionUID = 6198473318807316413L;
+
+    // The number of games shown on a page.
+    private static final int PAGE_SIZE = 50;
+
+    private final GameCatalogue catalogue;
+    private final JTextField search = new JTextField(20);
+    private final DefaultListModel<GameCatalogue.Entry> games = new DefaultListModel<GameCatalogue.Entry>();
+    private final JList<GameCatalogue.Entry> list = new JList<GameCatalogue.Entry>(games);
+    private final JLabel status = new JLabel();
+    private final JButton previous = new JButton("Previous");
+    private final JButton next = new JButton("Next");
+    private int offset;
+
+    /**
+     * Constructs a new LoadGameView showing the first page of a catalogue.
+     *
+     * @param catalogue the GameCatalogue to choose a game from.
+     */
+    public LoadGameView(GameCatalogue catalogue) {
+        super(new BorderLayout(0, 5));
+        this.catalogue = catalogue;
+        JPanel top = new JPanel(new BorderLayout(5, 0));
+        top.add(new JLabel("Search:"), BorderLayout.WEST);
+        top.add(search, BorderLayout.CENTER);
+        add(top, BorderLayout.NORTH);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setVisibleRowCount(15);
+        JScrollPane scroll = new JScrollPane(list);
+        scroll.setPreferredSize(new Dimension(560, 300));
+        add(scroll, BorderLayout.CENTER);
+        JPanel bottom = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        bottom.add(status);
+        bottom.add(previous);
+        bottom.add(next);
+        add(bottom, BorderLayout.SOUTH);
+        search.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) { showPage(0); }
+            public void removeUpdate(DocumentEvent e) { showPage(0); }
+            public void changedUpdate(DocumentEvent e) { showPage(0); }
+        });
+        previous.addActionListener(e -> showPage(offset - PAGE_SIZE));
+        next.addActionListener(e -> showPage(offset + PAGE_SIZE));
+        showPage(0);
+    }
+
+    // Shows the page of games starting at an offset among those matching the search.
+    // @param start the offset of the first game on the page.
+    private void showPage(int start) {
+        String prefix = search.getText();
+        int count = catalogue.count(prefix);
+        offset = Math.max(0, Math.min(start, ((count - 1) / PAGE_SIZE) * PAGE_SIZE));
+        List<GameCatalogue.Entry> page = catalogue.find(prefix, offset, PAGE_SIZE);
+        games.clear();
+        for (GameCatalogue.Entry entry : page) {
+            games.addElement(entry);
+        }
+        if (!page.isEmpty()) list.setSelectedIndex(0);
+        status.setText(count == 0 ? "No games" : (offset + 1) + "-" + (offset + page.size()) + " of " + count);
+        previous.setEnabled(offset > 0);
+        next.setEnabled(offset + PAGE_SIZE < count);
+    }
+
+    /**
+     * Returns the name of the selected game, or null if none is selected.
+     *
+     * @return the name of the selected game.
+     */
+    public String getSelectedGame() {
+        GameCatalogue.Entry entry = list.getSelectedValue();
+        return entry == null ? null : entry.getName();
+    }
+
+    /**
+     * Shows a dialog to choose a saved game and returns its name,
+     * or null if the dialog is cancelled.
+     *
+     * @param parent the Component the dialog belongs to.
+     * @param catalogue the GameCatalogue to choose a game from.
+     * @return the name of the game chosen, or null.
+     */
+    public static String showDialog(Component parent, GameCatalogue catalogue) {
+        LoadGameView view = new LoadGameView(catalogue);
+        int option = JOptionPane.showConfirmDialog(parent, view, "Load Game", JOptionPane.OK_CANCEL_OPTION,
+                                                   JOptionPane.PLAIN_MESSAGE);
+        if (option != JOptionPane.OK_OPTION) return null;
+        return view.getSelectedGame();
+    }
+
+}
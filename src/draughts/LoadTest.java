@@ -0,0 +1,209 @@
+package draughts;
+
+import java.util.*;
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+/**
+ * A client that opens many sessions to a GameServer at once, plays a
+ * random Move whenever asked, and reports the time from sending each
+ * Move to being asked for the next one.
+ * All sessions are served by one thread through a Selector.
+ * Usage: LoadTest [-host name] [-port n] [-sessions n] [-seed n]
+ */
+
+public class LoadTest {
+
+    // The size of the buffer each connection reads into.
+    private static final int READ_SIZE = 4096;
+
+    private final String host;
+    private final int port;
+    private final int sessions;
+    private final Random random;
+    private long[] latencies = new long[1024];
+    private int count;
+    private int finished;
+    private int failed;
+
+    /**
+     * Constructs a new LoadTest object.
+     *
+     * @param host the name of the server's host.
+     * @param port the port of the server.
+     * @param sessions the number of sessions to open at once.
+     * @param seed the seed for the random Moves.
+     */
+    public LoadTest(String host, int port, int sessions, long seed) {
+        this.host = host;
+        this.port = port;
+        this.sessions = sessions;
+        random = new Random(seed);
+    }
+
+    /**
+     * Opens the sessions and plays every game to the end.
+     *
+     * @throws IOException if a connection cannot be opened.
+     */
+    public void run() throws IOException {
+        Selector selector = Selector.open();
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        for (int i = 0; i < sessions; i++) {
+            SocketChannel channel = SocketChannel.open(address);
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.register(selector, SelectionKey.OP_READ, new Client(channel));
+        }
+        while (finished + failed < sessions) {
+            selector.select();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Client client = (Client) key.attachment();
+                if (!client.read()) {
+                    key.cancel();
+                    client.channel.close();
+                }
+            }
+        }
+        selector.close();
+    }
+
+    // Adds the time from a Move being sent to the next request.
+    // @param nanos the latency in nanoseconds.
+    private void record(long nanos) {
+        if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+        latencies[count++] = nanos;
+    }
+
+    /**
+     * Returns the latency below which a percentage of the Moves were
+     * answered, in microseconds.
+     *
+     * @param percentile the percentage, between 0 and 100.
+     * @return the latency of the percentile in microseconds.
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) return 0;
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.min(count - 1, Math.ceil((percentile / 100) * count) - 1);
+        return sorted[Math.max(0, index)] / 1000;
+    }
+
+    /**
+     * Returns the number of Moves timed.
+     *
+     * @return the number of Moves timed.
+     */
+    public int getMoves() {
+        return count;
+    }
+
+    /**
+     * Runs a load test and prints the latency percentiles.
+     *
+     * @param args the arguments provided by the user.
+     */
+    public static void main(String[] args) {
+        String host = "localhost";
+        int port = GameServer.DEFAULT_PORT;
+        int sessions = 10000;
+        long seed = 1;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-host")) host = args[i + 1];
+            else if (args[i].equals("-port")) port = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-sessions")) sessions = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-seed")) seed = Long.parseLong(args[i + 1]);
+        }
+        LoadTest test = new LoadTest(host, port, sessions, seed);
+        try {
+            long start = System.currentTimeMillis();
+            test.run();
+            long time = Math.max(1, System.currentTimeMillis() - start);
+            System.out.println("Sessions: " + sessions + " Finished: " + test.finished
+                               + " Failed: " + test.failed);
+            System.out.println("Moves: " + test.getMoves() + " in " + time + "ms, "
+                               + ((test.getMoves() * 1000L) / time) + " per second");
+            System.out.println("Latency us: p50 " + test.getPercentile(50) + ", p90 " + test.getPercentile(90)
+                               + ", p99 " + test.getPercentile(99) + ", p99.9 " + test.getPercentile(99.9)
+                               + ", max " + test.getPercentile(100));
+        } catch (IOException e) {
+            System.err.println("Error connecting to " + host + ":" + port + ". " + e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * One simulated player and its connection.
+     */
+    private class Client {
+
+        private final SocketChannel channel;
+        private final ByteBuffer input = ByteBuffer.allocate(READ_SIZE);
+        private final StringBuilder line = new StringBuilder();
+        private long sent;
+
+        // Constructs a new Client object.
+        // @param channel the connection to the server.
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        // Reads the waiting lines and answers them.
+        // @return false if the connection should be closed.
+        boolean read() throws IOException {
+            input.clear();
+            int read;
+            try {
+                read = channel.read(input);
+            } catch (IOException e) {
+                read = -1;
+            }
+            if (read < 0) {
+                failed++;
+                return false;
+            }
+            input.flip();
+            while (input.hasRemaining()) {
+                char c = (char) input.get();
+                if (c != '\n') {
+                    line.append(c);
+                    continue;
+                }
+                String text = line.toString();
+                line.setLength(0);
+                if (text.startsWith("MOVES ")) {
+                    if (sent != 0) record(System.nanoTime() - sent);
+                    String[] moves = text.substring(6).split(" ");
+                    send("MOVE " + moves[random.nextInt(moves.length)]);
+                } else if (text.startsWith("OVER")) {
+                    if (sent != 0) record(System.nanoTime() - sent);
+                    finished++;
+                    return false;
+                } else if (text.startsWith("ERROR")) {
+                    failed++;
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Sends a line and notes the time it was sent.
+        // @param text the line without its line break.
+        private void send(String text) throws IOException {
+            ByteBuffer output = ByteBuffer.wrap((text + "\n").getBytes(StandardCharsets.US_ASCII));
+            sent = System.nanoTime();
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+        }
+
+    }
+
+}
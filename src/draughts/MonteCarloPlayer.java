@@ -0,0 +1,542 @@
+package draughts;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A Player that chooses its Moves by Monte Carlo Tree Search (UCT), as an
+ * alternative to the alpha-beta Engine.
+ * All threads share one tree (tree parallelism). A thread passing through
+ * a node adds a virtual loss to it, so the others are steered elsewhere
+ * until its playout is counted, and node statistics are atomic counters,
+ * so no locks are taken.
+ * Playouts play random Moves on a BitBoard, which follows the same rules
+ * as DraughtsModel, until a player cannot move or MAX_PLAYOUT_PLIES Moves
+ * have been played. Random play rarely finishes a game once there are
+ * kings, so a playout cut off is won by the player with more material,
+ * counting a king as one and a half men, and drawn if they are level.
+ * Nothing is allocated during a playout.
+ * Nodes are held in arrays sized by a memory cap and recycled by each
+ * search. Once they are all in use, leaves are no longer expanded and
+ * playouts continue from them.
+ */
+
+public class MonteCarloPlayer implements Player {
+
+    /**
+     * The default memory for the tree in megabytes.
+     */
+    public static final int DEFAULT_MEMORY = 16;
+
+    /**
+     * The number of Moves after which a playout is decided by material.
+     */
+    public static final int MAX_PLAYOUT_PLIES = 150;
+
+    // The bytes used by each node.
+    private static final int NODE_SIZE = 32;
+    // The deepest path followed from the root, allowing for multi-jumps.
+    private static final int MAX_PATH = 512;
+    // The weight of exploration against exploitation in UCT.
+    private static final double EXPLORATION = Math.sqrt(2);
+    // The states of a node.
+    private static final int LEAF = 0;
+    private static final int EXPANDING = 1;
+    private static final int EXPANDED = 2;
+    private static final int TERMINAL = 3;
+    // The results of a playout for the player who made a Move, in half points.
+    private static final int WIN = 2;
+    private static final int DRAW = 1;
+    private static final int LOSS = 0;
+
+    private final int maxNodes;
+    private final int[] moves;
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final AtomicIntegerArray states;
+    private final AtomicIntegerArray visits;
+    private final AtomicIntegerArray virtualLosses;
+    private final AtomicLongArray scores;
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong remaining = new AtomicLong();
+    private final Random random;
+    private final BitBoard root = new BitBoard(Colour.Red, 0, 0, 0);
+    private Worker[] workers;
+    private ExecutorService pool;
+    private DraughtsModel model;
+    private long playoutLimit;
+    private long timeLimit;
+    private boolean verbose;
+    private volatile boolean full;
+    private volatile boolean stopped;
+    private long deadline;
+    private long playouts;
+    private long elapsed;
+    private int bestMove;
+    private int bestVisits;
+    private long bestScore;
+
+    /**
+     * Constructs a new MonteCarloPlayer object with one thread.
+     *
+     * @param memory the memory for the tree in megabytes.
+     * @param seed the seed for the random playouts.
+     * @throws IllegalArgumentException if memory is less than 1.
+     */
+    public MonteCarloPlayer(int memory, long seed) {
+        if (memory < 1) throw new IllegalArgumentException();
+        maxNodes = (int) Math.min(Integer.MAX_VALUE / 2, ((long) memory << 20) / NODE_SIZE);
+        moves = new int[maxNodes];
+        firstChild = new int[maxNodes];
+        childCount = new int[maxNodes];
+        states = new AtomicIntegerArray(maxNodes);
+        visits = new AtomicIntegerArray(maxNodes);
+        virtualLosses = new AtomicIntegerArray(maxNodes);
+        scores = new AtomicLongArray(maxNodes);
+        random = new Random(seed);
+        setThreads(1);
+    }
+
+    /**
+     * Sets the game this Player is choosing Moves for.
+     *
+     * @param model the game this Player is choosing Moves for.
+     */
+    @Override
+    public void setModel(DraughtsModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Sets the number of playouts each search may run, or 0 for no limit.
+     *
+     * @param playoutLimit the number of playouts each search may run.
+     */
+    public void setPlayoutLimit(long playoutLimit) {
+        this.playoutLimit = playoutLimit;
+    }
+
+    /**
+     * Sets the time each search may take in milliseconds, or 0 for no limit.
+     *
+     * @param timeLimit the time each search may take in milliseconds.
+     */
+    public void setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * Sets whether a line describing each search is printed.
+     *
+     * @param verbose true if a line describing each search is printed.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Sets the number of threads used by each search.
+     *
+     * @param threads the number of threads used by each search.
+     * @throws IllegalArgumentException if threads is less than 1.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException();
+        if (pool != null) pool.shutdownNow();
+        pool = null;
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(random.nextLong());
+        }
+        if (threads > 1) {
+            pool = Executors.newFixedThreadPool(threads - 1, runnable -> {
+                Thread thread = new Thread(runnable, "MonteCarloPlayer worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Stops the worker threads, leaving the Player with one thread.
+     */
+    @Override
+    public void shutdown() {
+        setThreads(1);
+    }
+
+    /**
+     * Returns the number of threads used by each search.
+     *
+     * @return the number of threads used by each search.
+     */
+    public int getThreads() {
+        return workers.length;
+    }
+
+    /**
+     * Returns the number of nodes the tree can hold.
+     *
+     * @return the number of nodes the tree can hold.
+     */
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * Stops the current search as soon as possible. It may be called
+     * from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Returns the Move selected by searching from the current position.
+     * When DraughtsModel asks for the next jump of a multi-jump, the
+     * valid Moves are only those jumps, so the search is restricted
+     * to them.
+     *
+     * @param validMoves the Set of valid Moves the Player could take.
+     * @return the Move selected by the search.
+     * @throws IllegalStateException if no game has been set.
+     */
+    public Move notify(Set<Move> validMoves) {
+        if (model == null) throw new IllegalStateException();
+        Move[] candidates = validMoves.toArray(new Move[validMoves.size()]);
+        int[] rootMoves = new int[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            rootMoves[i] = candidates[i].toPacked();
+        }
+        int best = search(model.toBitBoard(), rootMoves, rootMoves.length);
+        if (verbose) System.out.println(model.getCurrentPlayer() + " " + this);
+        for (int i = 0; i < candidates.length; i++) {
+            if (rootMoves[i] == best) return candidates[i];
+        }
+        return candidates[0];
+    }
+
+    /**
+     * Returns the most visited of the root Moves from a position after
+     * running playouts until a limit is reached. With no limits set, a
+     * search runs one second.
+     *
+     * @param position the BitBoard to search from.
+     * @param rootMoves the packed Moves the player may choose between.
+     * @param count the number of root Moves.
+     * @return the best packed Move.
+     * @throws IllegalArgumentException if there are no root Moves or more than the tree can hold.
+     */
+    public int search(BitBoard position, int[] rootMoves, int count) {
+        if (count == 0 || count >= maxNodes) throw new IllegalArgumentException();
+        long start = System.currentTimeMillis();
+        long time = playoutLimit == 0 && timeLimit == 0 ? 1000 : timeLimit;
+        deadline = time > 0 ? System.nanoTime() + (time * 1000000) : Long.MAX_VALUE;
+        remaining.set(playoutLimit > 0 ? playoutLimit : Long.MAX_VALUE);
+        stopped = false;
+        full = false;
+        root.copyFrom(position);
+        clear(0);
+        for (int i = 0; i < count; i++) {
+            clear(1 + i);
+            moves[1 + i] = rootMoves[i];
+        }
+        firstChild[0] = 1;
+        childCount[0] = count;
+        size.set(1 + count);
+        states.set(0, EXPANDED);
+        List<Future<?>> running = new ArrayList<Future<?>>();
+        for (int i = 1; i < workers.length; i++) {
+            running.add(pool.submit(workers[i]));
+        }
+        workers[0].run();
+        for (Future<?> worker : running) {
+            try {
+                worker.get();
+            } catch (InterruptedException e) {
+                System.err.println("Interrupted whilst waiting for a worker.");
+            } catch (ExecutionException e) {
+                System.err.println("Error in a worker. " + e.getCause());
+            }
+        }
+        playouts = 0;
+        for (Worker worker : workers) {
+            playouts += worker.playouts;
+        }
+        elapsed = System.currentTimeMillis() - start;
+        int best = 1;
+        for (int child = 2; child <= count; child++) {
+            if (visits.get(child) > visits.get(best)) best = child;
+        }
+        bestMove = moves[best];
+        bestVisits = visits.get(best);
+        bestScore = scores.get(best);
+        return bestMove;
+    }
+
+    // Resets a node to an unvisited leaf.
+    // @param node the index of the node.
+    private void clear(int node) {
+        firstChild[node] = 0;
+        childCount[node] = 0;
+        states.set(node, LEAF);
+        visits.set(node, 0);
+        virtualLosses.set(node, 0);
+        scores.set(node, 0);
+    }
+
+    // Returns true if the search should stop, taking one playout from the
+    // budget if it should not.
+    // @return true if the search should stop.
+    private boolean isFinished() {
+        if (stopped) return true;
+        if (remaining.decrementAndGet() < 0 || System.nanoTime() >= deadline) {
+            stopped = true;
+            return true;
+        }
+        return false;
+    }
+
+    // Returns the child of a node with the highest UCT value, counting
+    // virtual losses as visits that scored nothing. Unvisited children
+    // are chosen first.
+    // @param node the index of an expanded node.
+    // @return the index of the child chosen.
+    private int select(int node) {
+        int first = firstChild[node];
+        int last = first + childCount[node];
+        double logVisits = Math.log(Math.max(1, visits.get(node) + virtualLosses.get(node)));
+        int best = first;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int child = first; child < last; child++) {
+            int n = visits.get(child) + virtualLosses.get(child);
+            if (n == 0) return child;
+            double value = (scores.get(child) / (2.0 * n)) + (EXPLORATION * Math.sqrt(logVisits / n));
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    // Adds the children of a leaf for each valid Move of its position.
+    // Only the thread that moved the node from LEAF to EXPANDING calls this.
+    // If the tree is full, the node is left a leaf.
+    // @param node the index of the node.
+    // @param board the position of the node.
+    // @param list the array to generate the Moves into.
+    private void expand(int node, BitBoard board, int[] list) {
+        int count = board.generateMoves(list);
+        if (count == 0) {
+            states.set(node, TERMINAL);
+            return;
+        }
+        int first = size.getAndAdd(count);
+        if (first + count > maxNodes) {
+            full = true;
+            states.set(node, LEAF);
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            clear(first + i);
+            moves[first + i] = list[i];
+        }
+        firstChild[node] = first;
+        childCount[node] = count;
+        // Setting the state publishes the children to the other threads.
+        states.set(node, EXPANDED);
+    }
+
+    /**
+     * Returns the best Move found by the last search.
+     *
+     * @return the best packed Move found by the last search.
+     */
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * Returns the share of the points the best Move scored in its
+     * playouts, counting a draw as half, from 0 to 1.
+     *
+     * @return the share of the points the best Move scored.
+     */
+    public double getScore() {
+        return bestVisits == 0 ? 0.5 : bestScore / (2.0 * bestVisits);
+    }
+
+    /**
+     * Returns the number of playouts run by the last search,
+     * over all threads.
+     *
+     * @return the number of playouts run by the last search.
+     */
+    public long getPlayouts() {
+        return playouts;
+    }
+
+    /**
+     * Returns the number of nodes in the tree after the last search.
+     *
+     * @return the number of nodes in the tree.
+     */
+    public int getNodes() {
+        return Math.min(size.get(), maxNodes);
+    }
+
+    /**
+     * Returns the time taken by the last search in milliseconds.
+     *
+     * @return the time taken by the last search in milliseconds.
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Returns the number of playouts run per second by the last search.
+     *
+     * @return the number of playouts run per second by the last search.
+     */
+    public long getPlayoutsPerSecond() {
+        return (playouts * 1000) / Math.max(1, elapsed);
+    }
+
+    /**
+     * Returns the number of playouts run per second by each thread in the
+     * last search, with each thread on its own core.
+     *
+     * @return the number of playouts run per second by each thread.
+     */
+    public long getPlayoutsPerSecondPerThread() {
+        return getPlayoutsPerSecond() / workers.length;
+    }
+
+    /**
+     * Returns a String describing the last search.
+     *
+     * @return a String describing the last search.
+     */
+    @Override
+    public String toString() {
+        return "playouts " + playouts + " score " + String.format("%.3f", getScore()) + " nodes " + getNodes()
+                + (full ? " (full)" : "") + " time " + elapsed + "ms pps " + getPlayoutsPerSecond()
+                + " per thread " + getPlayoutsPerSecondPerThread() + " threads " + getThreads();
+    }
+
+    /**
+     * Searches the opening position and prints the playouts per second,
+     * in total and per thread.
+     * Usage: MonteCarloPlayer [time in milliseconds] [memory in megabytes] [threads]
+     *
+     * @param args the arguments provided by the user.
+     */
+    public static void main(String[] args) {
+        long time = args.length > 0 ? Long.parseLong(args[0]) : 5000;
+        int memory = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MEMORY;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        MonteCarloPlayer player = new MonteCarloPlayer(memory, 1);
+        player.setTimeLimit(time);
+        player.setThreads(threads);
+        BitBoard board = new DraughtsModel("MonteCarloPlayer", null).toBitBoard();
+        int[] rootMoves = new int[BitBoard.MAX_MOVES];
+        int count = board.generateMoves(rootMoves);
+        int move = player.search(board, rootMoves, count);
+        System.out.println("Best move " + BitBoard.getFrom(move) + "-" + BitBoard.getTo(move) + " " + player);
+        player.shutdown();
+    }
+
+    /**
+     * A thread's share of a search: its own board, path and random
+     * numbers, so the only state shared with other threads is the tree.
+     */
+    private class Worker implements Runnable {
+
+        private final BitBoard board = new BitBoard(Colour.Red, 0, 0, 0);
+        private final int[] list = new int[BitBoard.MAX_MOVES];
+        private final int[] path = new int[MAX_PATH];
+        private final boolean[] redMoved = new boolean[MAX_PATH];
+        private long seed;
+        private long playouts;
+
+        // Constructs a new Worker object.
+        // @param seed the seed for the random playouts.
+        Worker(long seed) {
+            this.seed = seed == 0 ? 1 : seed;
+        }
+
+        // Runs selection, expansion, a playout and backpropagation
+        // until the search is finished.
+        public void run() {
+            playouts = 0;
+            while (!isFinished()) {
+                board.copyFrom(root);
+                int length = descend();
+                int winner = playout();
+                for (int i = 1; i < length; i++) {
+                    int node = path[i];
+                    int result = winner == 0 ? DRAW : ((winner > 0) == redMoved[i] ? WIN : LOSS);
+                    scores.addAndGet(node, result);
+                    visits.incrementAndGet(node);
+                    virtualLosses.decrementAndGet(node);
+                }
+                visits.incrementAndGet(0);
+                playouts++;
+            }
+        }
+
+        // Follows the tree from the root to a leaf, playing each Move on
+        // the board and adding a virtual loss to each node passed. A leaf
+        // that has been visited before is expanded first.
+        // @return the number of nodes on the path, including the root.
+        private int descend() {
+            int node = 0;
+            int length = 1;
+            while (length < MAX_PATH) {
+                int state = states.get(node);
+                if (state == LEAF && !full && (node == 0 || visits.get(node) > 0)
+                    && states.compareAndSet(node, LEAF, EXPANDING)) {
+                    expand(node, board, list);
+                    state = states.get(node);
+                }
+                if (state != EXPANDED) break;
+                node = select(node);
+                virtualLosses.incrementAndGet(node);
+                redMoved[length] = board.getCurrentPlayer() == Colour.Red;
+                path[length++] = node;
+                board.play(moves[node]);
+            }
+            return length;
+        }
+
+        // Plays random Moves on the board until a player cannot move or
+        // MAX_PLAYOUT_PLIES have been played.
+        // @return 1 if Red wins, -1 if White wins, 0 for a draw.
+        private int playout() {
+            for (int plies = 0; plies < MAX_PLAYOUT_PLIES; plies++) {
+                int count = board.generateMoves(list);
+                if (count == 0) return board.getCurrentPlayer() == Colour.Red ? -1 : 1;
+                board.play(list[next(count)]);
+            }
+            int kings = board.getKings();
+            int material = (2 * (Integer.bitCount(board.getRed()) - Integer.bitCount(board.getWhite())))
+                           + Integer.bitCount(board.getRed() & kings) - Integer.bitCount(board.getWhite() & kings);
+            return Integer.signum(material);
+        }
+
+        // Returns a random number from 0 to bound - 1, by xorshift.
+        // @param bound the number of values.
+        // @return a random number from 0 to bound - 1.
+        private int next(int bound) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            return (int) (((seed >>> 33) * bound) >>> 31);
+        }
+
+    }
+
+}
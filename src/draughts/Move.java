@@ -18,6 +18,8 @@ public class Move {
      */
     public final Point destination;
     
+    private final int packed;
+    
     /**
      * Constructs a new Move object.
      *
@@ -28,6 +30,43 @@ public class Move {
     public Move(Piece piece, int x, int y) {
         this.piece = piece;
         destination = new Point(x, y);
+        packed = piece == null ? -1 : BitBoard.valueOf(piece, x, y);
+    }
+    
+    /**
+     * Returns the Move packed into an int as by BitBoard.valueOf, taken
+     * from where the Piece stood when the Move was constructed.
+     *
+     * @return the packed Move, or -1 if it is not a single step or jump.
+     */
+    public int toPacked() {
+        return packed;
+    }
+    
+    /**
+     * Returns true if another Move has the same packed value, so moves
+     * the same squares with the same capture and crowning. Moves that
+     * cannot be packed are only equal to themselves.
+     * Nothing is allocated.
+     *
+     * @param object the object to be compared.
+     * @return true if the Moves are equal.
+     */
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) return true;
+        if (!(object instanceof Move) || packed < 0) return false;
+        return packed == ((Move) object).packed;
+    }
+    
+    /**
+     * Returns the packed value of the Move as its hash code.
+     *
+     * @return the hash code of the Move.
+     */
+    @Override
+    public int hashCode() {
+        return packed < 0 ? System.identityHashCode(this) : packed;
     }
     
     /**
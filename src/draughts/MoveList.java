@@ -0,0 +1,54 @@
+package draughts;
+
+/**
+ * A reusable list of packed Moves, backed by an int array of MAX_MOVES.
+ * One list is kept for each turn and cleared rather than replaced, so
+ * filling and searching it allocates nothing.
+ */
+
+public class MoveList {
+
+    private final int[] moves = new int[BitBoard.MAX_MOVES];
+    private int size;
+
+    /**
+     * Empties the list.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Adds a packed Move to the end of the list.
+     *
+     * @param move the packed Move to be added.
+     * @throws IndexOutOfBoundsException if the list already holds MAX_MOVES Moves.
+     */
+    public void add(int move) {
+        if (size == moves.length) throw new IndexOutOfBoundsException();
+        moves[size++] = move;
+    }
+
+    /**
+     * Returns the number of Moves in the list.
+     *
+     * @return the number of Moves in the list.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the index of a packed Move, or -1 if it is not in the list.
+     *
+     * @param move the packed Move.
+     * @return the index of the Move, or -1.
+     */
+    public int indexOf(int move) {
+        for (int i = 0; i < size; i++) {
+            if (moves[i] == move) return i;
+        }
+        return -1;
+    }
+
+}
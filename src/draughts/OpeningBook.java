@@ -0,0 +1,282 @@
+package draughts;
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.stream.*;
+
+/**
+ * An opening book of the Moves played from positions early in stored games,
+ * with how often each was played and how well it scored for the player
+ * who played it.
+ * The book is built from GameJournals, which hold every Move of a game.
+ * The file is an 8 byte header, the magic number and the number of
+ * records, followed by 16 byte records sorted by the Zobrist key of the
+ * position: the key, the Move as a short from | to << 5, the number of
+ * games as an int, and the score as an unsigned short fraction of 65535.
+ * It is probed by binary search over the memory-mapped file, so only the
+ * pages probed are read.
+ * Usage: OpeningBook directory book [-turns n] [-min n] [-maxTurns n]
+ */
+
+public class OpeningBook {
+
+    /**
+     * The number of bytes in a record.
+     */
+    public static final int RECORD_SIZE = 16;
+
+    // The first four bytes of a book, "DBOK".
+    private static final int MAGIC = 0x44424F4B;
+    // The number of bytes before the first record.
+    private static final int HEADER_SIZE = 8;
+    // The score of a Move that won every game.
+    private static final int MAX_SCORE = 0xFFFF;
+
+    private final ByteBuffer buffer;
+    private final int size;
+
+    /**
+     * Opens a book by mapping its file.
+     *
+     * @param file the book file.
+     * @throws IOException if the file cannot be read or is not a book.
+     */
+    public OpeningBook(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = input.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) throw new IOException("Not an opening book.");
+        size = buffer.getInt(4);
+        if (HEADER_SIZE + ((long) size * RECORD_SIZE) > buffer.capacity()) throw new IOException("Opening book is truncated.");
+    }
+
+    /**
+     * Returns the number of records in the book.
+     *
+     * @return the number of records in the book.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the index of the first record of a position, or -1 if the
+     * position is not in the book. The records of a position are next to
+     * each other, with the most played first.
+     *
+     * @param key the Zobrist key of the position.
+     * @return the index of the first record of the position, or -1.
+     */
+    public int find(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getKey(middle) < key) low = middle + 1;
+            else high = middle;
+        }
+        return low < size && getKey(low) == key ? low : -1;
+    }
+
+    /**
+     * Returns the Zobrist key of the position of a record.
+     *
+     * @param index the index of the record.
+     * @return the Zobrist key of the position.
+     */
+    public long getKey(int index) {
+        return buffer.getLong(HEADER_SIZE + (index * RECORD_SIZE));
+    }
+
+    /**
+     * Returns the Move of a record as from | to << 5.
+     *
+     * @param index the index of the record.
+     * @return the Move of the record.
+     */
+    public int getMove(int index) {
+        return buffer.getShort(HEADER_SIZE + (index * RECORD_SIZE) + 8);
+    }
+
+    /**
+     * Returns the number of games the Move of a record was played in.
+     *
+     * @param index the index of the record.
+     * @return the number of games the Move was played in.
+     */
+    public int getGames(int index) {
+        return buffer.getInt(HEADER_SIZE + (index * RECORD_SIZE) + 10);
+    }
+
+    /**
+     * Returns the share of the points the player of the Move of a record
+     * scored, counting a draw as half, from 0 to 1.
+     *
+     * @param index the index of the record.
+     * @return the share of the points the player scored.
+     */
+    public double getScore(int index) {
+        return buffer.getChar(HEADER_SIZE + (index * RECORD_SIZE) + 14) / (double) MAX_SCORE;
+    }
+
+    /**
+     * Returns one of the root Moves that is in the book for a position,
+     * chosen at random in proportion to the number of games it was played
+     * in, or 0 if none of them are in the book.
+     *
+     * @param board the position.
+     * @param rootMoves the packed Moves the player may choose between.
+     * @param count the number of root Moves.
+     * @param random the Random used to choose between book Moves.
+     * @return the packed Move chosen, or 0 if none of them are in the book.
+     */
+    public int choose(BitBoard board, int[] rootMoves, int count, Random random) {
+        int first = find(board.getKey());
+        if (first < 0) return 0;
+        long total = 0;
+        for (int i = first; i < size && getKey(i) == board.getKey(); i++) {
+            if (indexOf(rootMoves, count, getMove(i)) >= 0) total += getGames(i);
+        }
+        if (total == 0) return 0;
+        long choice = (long) (random.nextDouble() * total);
+        for (int i = first; i < size && getKey(i) == board.getKey(); i++) {
+            int index = indexOf(rootMoves, count, getMove(i));
+            if (index < 0) continue;
+            choice -= getGames(i);
+            if (choice < 0) return rootMoves[index];
+        }
+        return 0;
+    }
+
+    // Returns the index of the packed Move with the squares of a book Move.
+    // @param rootMoves the packed Moves.
+    // @param count the number of packed Moves.
+    // @param move the book Move as from | to << 5.
+    // @return the index of the packed Move, or -1 if there is none.
+    private static int indexOf(int[] rootMoves, int count, int move) {
+        for (int i = 0; i < count; i++) {
+            if ((BitBoard.getFrom(rootMoves[i]) | (BitBoard.getTo(rootMoves[i]) << 5)) == move) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Builds a book from GameJournals. Only the Moves starting the first
+     * turns of each game are counted. Each game is scored by
+     * GameJournal.readResult, and games that are not over are skipped.
+     *
+     * @param journals the GameJournal files.
+     * @param book the book file to write.
+     * @param turns the number of turns of each game to count.
+     * @param minGames the number of games a Move must be played in to be kept.
+     * @param maxTurns the number of turns after which the games were drawn, or 0 for no limit.
+     * @return the number of journals that could not be read or whose games are not over.
+     * @throws IOException if the book cannot be written.
+     */
+    public static int build(List<File> journals, File book, int turns, int minGames, int maxTurns) throws IOException {
+        Map<Long, Map<Integer, int[]>> positions = new HashMap<Long, Map<Integer, int[]>>();
+        List<long[]> played = new ArrayList<long[]>();
+        int skipped = 0;
+        for (File journal : journals) {
+            played.clear();
+            int result;
+            try {
+                // A Move starting a turn is played from a position with no jump
+                // in progress, so the first such positions are the first turns.
+                result = GameJournal.readResult(journal, maxTurns, (board, move) -> {
+                    if (board.getJumping() < 0 && played.size() < turns) {
+                        played.add(new long[] {board.getKey(), BitBoard.getFrom(move) | (BitBoard.getTo(move) << 5),
+                                               board.getCurrentPlayer() == Colour.Red ? 1 : 0});
+                    }
+                });
+            } catch (Exception e) {
+                result = GameJournal.UNFINISHED;
+            }
+            if (result == GameJournal.UNFINISHED) {
+                skipped++;
+                continue;
+            }
+            for (long[] entry : played) {
+                int[] stats = positions.computeIfAbsent(entry[0], key -> new HashMap<Integer, int[]>())
+                                       .computeIfAbsent((int) entry[1], move -> new int[2]);
+                stats[0]++;
+                stats[1] += entry[2] == 1 ? result : 2 - result;
+            }
+        }
+        write(positions, book, minGames);
+        return skipped;
+    }
+
+    // Writes the records of the Moves played in at least minGames games,
+    // sorted by key and then by the number of games.
+    // @param positions the statistics of each Move of each position.
+    // @param book the book file to write.
+    // @param minGames the number of games a Move must be played in to be kept.
+    private static void write(Map<Long, Map<Integer, int[]>> positions, File book, int minGames) throws IOException {
+        List<long[]> records = new ArrayList<long[]>();
+        for (Map.Entry<Long, Map<Integer, int[]>> position : positions.entrySet()) {
+            for (Map.Entry<Integer, int[]> move : position.getValue().entrySet()) {
+                int[] stats = move.getValue();
+                if (stats[0] >= minGames) records.add(new long[] {position.getKey(), move.getKey(), stats[0], stats[1]});
+            }
+        }
+        records.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(b[2], a[2]));
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + (records.size() * RECORD_SIZE));
+        out.putInt(MAGIC);
+        out.putInt(records.size());
+        for (long[] record : records) {
+            out.putLong(record[0]);
+            out.putShort((short) record[1]);
+            out.putInt((int) record[2]);
+            out.putChar((char) ((record[3] * MAX_SCORE) / (2 * record[2])));
+        }
+        out.flip();
+        try (FileChannel channel = FileChannel.open(book.toPath(), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    /**
+     * Builds a book from the GameJournals in a directory tree and prints
+     * the number of records.
+     *
+     * @param args the arguments provided by the user.
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: OpeningBook directory book [-turns n] [-min n] [-maxTurns n]");
+            System.exit(1);
+        }
+        int turns = 12;
+        int minGames = 2;
+        int maxTurns = 200;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-turns")) turns = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-min")) minGames = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-maxTurns")) maxTurns = Integer.parseInt(args[i + 1]);
+        }
+        List<File> journals = new ArrayList<File>();
+        try {
+            try (Stream<Path> paths = Files.walk(Paths.get(args[0]))) {
+                paths.filter(path -> path.getFileName().toString().endsWith(GameJournal.FILE_EXT))
+                     .forEach(path -> journals.add(path.toFile()));
+            }
+            long start = System.currentTimeMillis();
+            int skipped = build(journals, new File(args[1]), turns, minGames, maxTurns);
+            OpeningBook book = new OpeningBook(new File(args[1]));
+            System.out.println("Journals: " + journals.size() + " Skipped: " + skipped + " Records: " + book.size()
+                               + " in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (IOException e) {
+            System.err.println("Error building opening book. " + e);
+            System.exit(1);
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+package draughts;
+
+import java.io.*;
+
+/**
+ * A class to count the leaf nodes of the game tree to a fixed depth,
+ * to check the Move generation rules and measure their speed.
+ * A depth of one is one turn, so every jump of a multi-jump belongs
+ * to the same ply.
+ * Usage: Perft depth [save file or game name] [-divide] [-verify]
+ */
+
+public class Perft {
+
+    // The deepest ply reachable, allowing for multi-jump continuations.
+    private static final int MAX_PLY = 256;
+
+    private final BitBoard[] boards;
+    private final int[][] moves;
+    private boolean verify;
+
+    /**
+     * Constructs a new Perft object.
+     */
+    public Perft() {
+        boards = new BitBoard[MAX_PLY + 1];
+        moves = new int[MAX_PLY + 1][BitBoard.MAX_MOVES];
+        for (int i = 0; i <= MAX_PLY; i++) {
+            boards[i] = new BitBoard(Colour.Red, 0, 0, 0);
+        }
+    }
+
+    /**
+     * Sets whether each position is also checked against the Moves
+     * generated by DraughtsModel. This is much slower.
+     *
+     * @param verify true if each position is checked against DraughtsModel.
+     */
+    public void setVerify(boolean verify) {
+        this.verify = verify;
+    }
+
+    /**
+     * Returns the number of leaf nodes to a depth.
+     *
+     * @param board the BitBoard to count from.
+     * @param depth the number of turns to play.
+     * @return the number of leaf nodes to a depth.
+     */
+    public long perft(BitBoard board, int depth) {
+        boards[0].copyFrom(board);
+        return perft(depth, 0);
+    }
+
+    /**
+     * Returns the number of leaf nodes to a depth below each
+     * root Move, in the order the Moves are generated.
+     *
+     * @param board the BitBoard to count from.
+     * @param depth the number of turns to play.
+     * @param rootMoves the array to receive the root Moves.
+     * @param counts the array to receive the count for each root Move.
+     * @return the number of root Moves.
+     */
+    public int divide(BitBoard board, int depth, int[] rootMoves, long[] counts) {
+        boards[0].copyFrom(board);
+        int count = board.generateMoves(rootMoves);
+        for (int i = 0; i < count; i++) {
+            counts[i] = child(rootMoves[i], depth, 0);
+        }
+        return count;
+    }
+
+    // Returns the number of leaf nodes below the board at a ply.
+    // @param depth the number of turns left to play.
+    // @param ply the ply of the board.
+    // @return the number of leaf nodes below the board at a ply.
+    private long perft(int depth, int ply) {
+        BitBoard board = boards[ply];
+        if (depth == 0 && board.getJumping() < 0) return 1;
+        if (verify) check(board);
+        int[] list = moves[ply];
+        int count = board.generateMoves(list);
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            if (depth == 1 && !BitBoard.isJump(list[i])) total++;
+            else total += child(list[i], depth, ply);
+        }
+        return total;
+    }
+
+    // Plays a Move from the board at a ply and returns the leaf nodes below it.
+    // Simple Moves on the last turn are counted without being played.
+    // @param move the packed Move to be played.
+    // @param depth the number of turns left before the Move.
+    // @param ply the ply of the board the Move is played from.
+    // @return the number of leaf nodes below the Move.
+    private long child(int move, int depth, int ply) {
+        BitBoard board = boards[ply + 1];
+        board.copyFrom(boards[ply]);
+        if (board.play(move)) return perft(depth, ply + 1);
+        return perft(depth - 1, ply + 1);
+    }
+
+    // Throws an IllegalStateException if the BitBoard and DraughtsModel
+    // generate a different number of Moves for a position.
+    // @param board the position to check.
+    private void check(BitBoard board) {
+        if (board.getJumping() >= 0) return;
+        DraughtsModel model = new DraughtsModel("perft", null, board);
+        int expected = model.getValidMoves().size();
+        int actual = board.generateMoves(new int[BitBoard.MAX_MOVES]);
+        if (expected != actual) {
+            throw new IllegalStateException(board + ": DraughtsModel has " + expected
+                                            + " Moves, BitBoard has " + actual);
+        }
+    }
+
+    /**
+     * Returns a String representing a packed Move with its coordinates.
+     *
+     * @param move the packed Move.
+     * @return a String representing a packed Move.
+     */
+    public static String toString(int move) {
+        int from = BitBoard.getFrom(move);
+        int to = BitBoard.getTo(move);
+        return "(" + BitBoard.getX(from) + ", " + BitBoard.getY(from) + ") -> ("
+                + BitBoard.getX(to) + ", " + BitBoard.getY(to) + ")";
+    }
+
+    /**
+     * Counts the leaf nodes from the opening position, or from a saved game,
+     * and prints the count for each depth with the nodes per second.
+     *
+     * @param args the arguments provided by the user.
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: Perft depth [save file or game name] [-divide] [-verify]");
+            System.exit(1);
+        }
+        int depth = Integer.parseInt(args[0]);
+        boolean divide = false;
+        Perft perft = new Perft();
+        BitBoard board = new DraughtsModel("perft", null).toBitBoard();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-divide")) divide = true;
+            else if (args[i].equals("-verify")) perft.setVerify(true);
+            else if (args[i].endsWith(SaveGame.FILE_EXT)) board = SaveGame.loadGame(new File(args[i])).toBitBoard();
+            else board = SaveGame.loadGame(args[i]).toBitBoard();
+        }
+        if (divide) {
+            int[] rootMoves = new int[BitBoard.MAX_MOVES];
+            long[] counts = new long[BitBoard.MAX_MOVES];
+            int count = perft.divide(board, depth, rootMoves, counts);
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                System.out.println(toString(rootMoves[i]) + ": " + counts[i]);
+                total += counts[i];
+            }
+            System.out.println("Moves: " + count + " Nodes: " + total);
+            return;
+        }
+        for (int d = 1; d <= depth; d++) {
+            long start = System.nanoTime();
+            long nodes = perft.perft(board, d);
+            long time = Math.max(1, System.nanoTime() - start);
+            System.out.println("perft(" + d + ") = " + nodes + " in " + (time / 1000000) + "ms, "
+                               + ((nodes * 1000000000L) / time) + " nodes per second");
+        }
+    }
+
+}
@@ -15,4 +15,20 @@ public interface Player {
      */
     public Move notify(Set<Move> validMoves);
     
-}
\ No newline at end of file
+    /**
+     * Sets the game this Player is choosing Moves for.
+     * Players that choose without looking at the game ignore it.
+     *
+     * @param model the game this Player is choosing Moves for.
+     */
+    public default void setModel(DraughtsModel model) {
+    }
+    
+    /**
+     * Stops any threads the Player has started. The Player may still
+     * be asked for Moves afterwards, on the calling thread alone.
+     */
+    public default void shutdown() {
+    }
+    
+}
@@ -0,0 +1,36 @@
+package draughts;
+
+import java.util.*;
+
+/**
+ * A Player that chooses each Move at random.
+ */
+
+public class RandomPlayer implements Player {
+
+    private final Random random;
+
+    /**
+     * Constructs a new RandomPlayer object.
+     *
+     * @param seed the seed for the random choices.
+     */
+    public RandomPlayer(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Returns a random Move.
+     *
+     * @param validMoves the Set of valid Moves the Player could take.
+     * @return a random Move.
+     */
+    public Move notify(Set<Move> validMoves) {
+        int index = random.nextInt(validMoves.size());
+        for (Move move : validMoves) {
+            if (index-- == 0) return move;
+        }
+        return null;
+    }
+
+}
@@ -2,9 +2,19 @@ package draughts;
 
 import java.util.*;
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
 
 /**
  * A class to save and load games.
+ * Games are saved as a 16 byte record: a 4 byte header holding a magic
+ * number, the format version and the player to move, followed by the
+ * red, white and kings masks of a BitBoard. Files in the older text
+ * format, the current player followed by one Piece per line, are
+ * detected when loaded and can be migrated with main.
+ * Usage: SaveGame [directory]
  */
 
 public class SaveGame {
@@ -18,6 +28,17 @@ public class SaveGame {
      * The file extension for saved games.
      */
     public static final String FILE_EXT = ".draughts";
+
+    /**
+     * The number of bytes in a saved game record.
+     */
+    public static final int RECORD_SIZE = 16;
+
+    // The first two bytes of a record, "DR", which cannot start a text save.
+    private static final short MAGIC = 0x4452;
+    private static final byte VERSION = 1;
+    // The flag set when White is to move.
+    private static final byte WHITE_TO_MOVE = 1;
     
     private Colour currentPlayer;
     private Set<Piece> pieces;
@@ -33,6 +54,15 @@ public class SaveGame {
         this.pieces = pieces;
     }
     
+    /**
+     * Constructs a new SaveGame object from a BitBoard.
+     *
+     * @param board the BitBoard holding the position.
+     */
+    public SaveGame(BitBoard board) {
+        this(board.getCurrentPlayer(), board.getPieces());
+    }
+    
     /**
      * Returns the current player for this save game.
      *
@@ -51,6 +81,15 @@ public class SaveGame {
         return pieces;
     }    
     
+    /**
+     * Returns a BitBoard holding the position of this save game.
+     *
+     * @return a BitBoard holding the position of this save game.
+     */
+    public BitBoard toBitBoard() {
+        return new BitBoard(currentPlayer, pieces);
+    }
+    
     /**
      * Saves a game.
      *
@@ -59,21 +98,98 @@ public class SaveGame {
      * @param pieces the Set of Pieces in the game.
      */
     public static void saveGame(String gameName, Colour currentPlayer, Set<Piece> pieces) {
+        saveGame(gameName, new BitBoard(currentPlayer, pieces));
+    }
+    
+    /**
+     * Saves a game from a BitBoard.
+     *
+     * @param gameName the name of the game to be saved.
+     * @param board the BitBoard holding the position.
+     */
+    public static void saveGame(String gameName, BitBoard board) {
         try {
-            File file = new File(SaveGame.SAVE_DIR + "/" + gameName + SaveGame.FILE_EXT);
-            String game = currentPlayer.toString() + "\n";
-            for (Piece piece : pieces) {
-                game += piece.toString() + "\n";
-            }
-            PrintWriter printWriter = new PrintWriter(file);
-            printWriter.write(game);
-            printWriter.close();
+            saveGame(getFile(gameName), board);
         } catch (IOException e) {
             System.err.println("Error writing save game.");
             System.exit(1);
         }
     }
     
+    /**
+     * Returns the saved game file of a game in the saved games folder.
+     *
+     * @param gameName the name of the game.
+     * @return the saved game file of a game.
+     */
+    public static File getFile(String gameName) {
+        return new File(SaveGame.SAVE_DIR + "/" + gameName + SaveGame.FILE_EXT);
+    }
+    
+    /**
+     * Saves a game from a BitBoard to a file.
+     *
+     * @param gameFile the file to hold the saved game.
+     * @param board the BitBoard holding the position.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void saveGame(File gameFile, BitBoard board) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        writeRecord(buffer, board);
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(gameFile.toPath(), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+    
+    /**
+     * Writes a position as a record at the position of a buffer.
+     * Records can be written one after another to archive many positions.
+     *
+     * @param buffer the buffer with at least RECORD_SIZE bytes remaining.
+     * @param board the BitBoard holding the position.
+     */
+    public static void writeRecord(ByteBuffer buffer, BitBoard board) {
+        buffer.putShort(MAGIC);
+        buffer.put(VERSION);
+        buffer.put(board.getCurrentPlayer() == Colour.White ? WHITE_TO_MOVE : 0);
+        buffer.putInt(board.getRed());
+        buffer.putInt(board.getWhite());
+        buffer.putInt(board.getKings());
+    }
+    
+    /**
+     * Reads a record at the position of a buffer.
+     *
+     * @param buffer the buffer with at least RECORD_SIZE bytes remaining.
+     * @return a BitBoard holding the position.
+     * @throws IllegalArgumentException if the bytes are not a record.
+     */
+    public static BitBoard readRecord(ByteBuffer buffer) {
+        if (buffer.getShort() != MAGIC || buffer.get() != VERSION) throw new IllegalArgumentException();
+        Colour currentPlayer = (buffer.get() & WHITE_TO_MOVE) != 0 ? Colour.White : Colour.Red;
+        int red = buffer.getInt();
+        int white = buffer.getInt();
+        int kings = buffer.getInt();
+        if ((red & white) != 0 || (kings & ~(red | white)) != 0) throw new IllegalArgumentException();
+        return new BitBoard(currentPlayer, red, white, kings);
+    }
+    
+    /**
+     * Returns true if a buffer holds a record at its position
+     * rather than a game in the text format.
+     *
+     * @param buffer the buffer to be checked.
+     * @return true if a buffer holds a record at its position.
+     */
+    public static boolean isRecord(ByteBuffer buffer) {
+        return buffer.remaining() >= RECORD_SIZE && buffer.getShort(buffer.position()) == MAGIC;
+    }
+    
     /**
      * Returns an Array of the previously saved games.
      *
@@ -92,6 +208,9 @@ public class SaveGame {
             String name = file.getName();
             if (!file.isDirectory() && name.endsWith(SaveGame.FILE_EXT)) {
                 games.add(name.replace(SaveGame.FILE_EXT, ""));
+            } else if (!file.isDirectory() && name.endsWith(GameJournal.FILE_EXT)) {
+                String game = name.replace(GameJournal.FILE_EXT, "");
+                if (!new File(savedGames, game + SaveGame.FILE_EXT).exists()) games.add(game);
             }
         }
         return games.toArray(new String[games.size()]);
@@ -99,24 +218,33 @@ public class SaveGame {
     
     /**
      * Returns a SaveGame object containing the data for a saved game.
+     * If the game has a GameJournal, the journal is replayed instead, as
+     * it holds every Move played up to a crash.
      *
      * @param gameName the name of the game to be retrieved.
      * @return a SaveGame object containing the data for a saved game.
      */
     public static SaveGame loadGame(String gameName) {
-        try {
-            File gameFile = new File(SaveGame.SAVE_DIR + "/" + gameName + SaveGame.FILE_EXT);
-            Scanner scanner = new Scanner(gameFile);
-            Colour currentPlayer = null;
-            Set<Piece> pieces = new HashSet<Piece>();
-            if (scanner.hasNextLine()) {
-                currentPlayer = Colour.valueOf(scanner.nextLine());
-                while (scanner.hasNextLine()) {
-                    pieces.add(Piece.valueOf(scanner.nextLine()));
-                }
+        File journal = GameJournal.getFile(gameName);
+        if (journal.exists()) {
+            try {
+                return new SaveGame(GameJournal.replay(journal));
+            } catch (Exception e) {
+                System.err.println("Error replaying game journal, loading the saved game instead.");
             }
-            scanner.close();
-            return new SaveGame(currentPlayer, pieces);
+        }
+        return loadGame(getFile(gameName));
+    }
+    
+    /**
+     * Returns a SaveGame object containing the data for a saved game file.
+     *
+     * @param gameFile the file holding the saved game.
+     * @return a SaveGame object containing the data for a saved game file.
+     */
+    public static SaveGame loadGame(File gameFile) {
+        try {
+            return new SaveGame(readGame(gameFile));
         } catch (Exception e) {
             System.err.println("Error loading game.");
             System.exit(1);
@@ -124,4 +252,87 @@ public class SaveGame {
         return null;
     }
     
-}
\ No newline at end of file
+    /**
+     * Returns a BitBoard holding the position of a saved game file,
+     * in either the record or the text format.
+     *
+     * @param gameFile the file holding the saved game.
+     * @return a BitBoard holding the position of a saved game file.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if the file is not a saved game.
+     */
+    public static BitBoard readGame(File gameFile) throws IOException {
+        ByteBuffer buffer = read(gameFile);
+        if (isRecord(buffer)) return readRecord(buffer);
+        return readText(buffer);
+    }
+    
+    // Returns a buffer holding the whole of a file.
+    // @param file the file to be read.
+    // @return a buffer holding the whole of a file.
+    private static ByteBuffer read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0);
+            buffer.flip();
+            return buffer;
+        }
+    }
+    
+    // Returns a BitBoard holding a game in the text format: the current
+    // player followed by one Piece per line.
+    // @param buffer the buffer holding the text.
+    // @return a BitBoard holding the game.
+    private static BitBoard readText(ByteBuffer buffer) {
+        String[] lines = StandardCharsets.UTF_8.decode(buffer).toString().split("\\r?\\n");
+        if (lines[0].isEmpty()) throw new IllegalArgumentException();
+        Colour currentPlayer = Colour.valueOf(lines[0].trim());
+        Set<Piece> pieces = new HashSet<Piece>();
+        for (int i = 1; i < lines.length; i++) {
+            if (!lines[i].isEmpty()) pieces.add(Piece.valueOf(lines[i]));
+        }
+        return new BitBoard(currentPlayer, pieces);
+    }
+    
+    /**
+     * Rewrites a saved game file in the text format as a record.
+     *
+     * @param gameFile the file holding the saved game.
+     * @return true if the file was in the text format and has been rewritten.
+     * @throws IOException if the file cannot be read or written.
+     */
+    public static boolean migrate(File gameFile) throws IOException {
+        ByteBuffer buffer = read(gameFile);
+        if (isRecord(buffer)) return false;
+        File temp = new File(gameFile.getPath() + ".tmp");
+        saveGame(temp, readText(buffer));
+        Files.move(temp.toPath(), gameFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+    
+    /**
+     * Migrates the saved games in a directory from the text format.
+     *
+     * @param args the arguments provided by the user.
+     */
+    public static void main(String[] args) {
+        File directory = new File(args.length > 0 ? args[0] : SAVE_DIR);
+        File[] files = directory.listFiles();
+        if (files == null) {
+            System.err.println("Usage: SaveGame [directory]");
+            System.exit(1);
+        }
+        int migrated = 0;
+        for (File file : files) {
+            if (file.isDirectory() || !file.getName().endsWith(FILE_EXT)) continue;
+            try {
+                if (migrate(file)) migrated++;
+            } catch (Exception e) {
+                System.err.println("Error migrating " + file + ". " + e);
+            }
+        }
+        System.out.println("Migrated " + migrated + " of " + files.length + " files.");
+    }
+    
+}
@@ -21,7 +21,7 @@ public class SetUpView extends JPanel {
      */
     public SetUpView(ActionListener listener) {
         setLayout(new GridBagLayout());
-        JPanel panel = new JPanel(new GridLayout(2, 1, 0, 10));
+        JPanel panel = new JPanel(new GridLayout(3, 1, 0, 10));
         panel.setOpaque(false);
         JButton newButton = getStyledButton("New Game");
         newButton.setActionCommand("new_game");
@@ -29,8 +29,12 @@ public class SetUpView extends JPanel {
         JButton loadButton = getStyledButton("Load Game");
         loadButton.setActionCommand("load_game");
         loadButton.addActionListener(listener);
+        JButton computerButton = getStyledButton("Vs Computer");
+        computerButton.setActionCommand("computer_game");
+        computerButton.addActionListener(listener);
         panel.add(newButton);
         panel.add(loadButton);
+        panel.add(computerButton);
         add(panel);
     }
     
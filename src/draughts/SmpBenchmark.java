@@ -0,0 +1,79 @@
+package draughts;
+
+import java.util.*;
+
+/**
+ * A class to measure how the time to reach a fixed depth falls as the
+ * Engine uses more threads, over a fixed set of positions.
+ * Usage: SmpBenchmark [depth] [hash size in megabytes] [thread counts...]
+ */
+
+public class SmpBenchmark {
+
+    // The number of positions searched for each thread count.
+    private static final int POSITIONS = 8;
+
+    /**
+     * Returns the fixed set of positions: the opening, and positions
+     * reached from it by seeded random turns.
+     *
+     * @return the fixed set of positions.
+     */
+    public static List<BitBoard> positions() {
+        List<BitBoard> positions = new ArrayList<BitBoard>();
+        BitBoard opening = new DraughtsModel("smp", null).toBitBoard();
+        positions.add(opening);
+        Random random = new Random(42);
+        int[] moves = new int[BitBoard.MAX_MOVES];
+        while (positions.size() < POSITIONS) {
+            BitBoard board = new BitBoard(opening);
+            int turns = 6 + random.nextInt(14);
+            for (int i = 0; i < turns && board.hasMoves(); i++) {
+                do {
+                    board.play(moves[random.nextInt(board.generateMoves(moves))]);
+                } while (board.getJumping() >= 0);
+            }
+            if (board.hasMoves()) positions.add(board);
+        }
+        return positions;
+    }
+
+    /**
+     * Prints the time to depth for each thread count and the speedup
+     * over one thread.
+     *
+     * @param args the arguments provided by the user.
+     */
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 14;
+        int hashSize = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int[] threadCounts = {1, 2, 4, 8, 16};
+        if (args.length > 2) {
+            threadCounts = new int[args.length - 2];
+            for (int i = 2; i < args.length; i++) {
+                threadCounts[i - 2] = Integer.parseInt(args[i]);
+            }
+        }
+        List<BitBoard> positions = positions();
+        int[] moves = new int[BitBoard.MAX_MOVES];
+        double baseline = 0;
+        for (int threads : threadCounts) {
+            long time = 0;
+            long nodes = 0;
+            for (BitBoard board : positions) {
+                Engine engine = new Engine(new Evaluation(), new TranspositionTable(hashSize));
+                engine.setMaxDepth(depth);
+                engine.setThreads(threads);
+                engine.search(board, moves, board.generateMoves(moves));
+                engine.shutdown();
+                time += engine.getElapsed();
+                nodes += engine.getNodes();
+            }
+            if (baseline == 0) baseline = time;
+            System.out.println(String.format("threads %2d: time to depth %d %6dms, speedup %.2f, %d nodes per second",
+                                             threads, depth, time, baseline / Math.max(1, time),
+                                             (nodes * 1000) / Math.max(1, time)));
+        }
+    }
+
+}
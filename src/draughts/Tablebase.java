@@ -0,0 +1,624 @@
+package draughts;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * A class to generate and probe endgame tablebases: the result with
+ * perfect play of every position with up to a fixed number of Pieces.
+ * Positions are grouped into slices by the number of Red men, Red kings,
+ * White men and White kings. Each slice is one file holding a byte per
+ * position, first with Red to move and then with White to move.
+ * A byte of 0 is a draw, d &gt; 0 is a win in d turns and -(d + 1) is a
+ * loss in d turns for the player to move.
+ * Distances of up to 126 turns fit in a byte. A position that would be
+ * won or lost in more turns is stored as -128 rather than as a draw.
+ * So is any position that would otherwise be a draw but can move to
+ * one of them, as its result is not known either. probe() returns
+ * UNKNOWN for these positions, so they are searched as usual rather
+ * than trusted as draws.
+ * Files are read through memory-mapped buffers, so opening them costs
+ * nothing and the pages are shared between processes.
+ * Usage: Tablebase pieces [directory]
+ */
+
+public class Tablebase {
+
+    /**
+     * The value returned by probe() for positions not in the tablebase.
+     */
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+
+    /**
+     * The default directory holding the tablebase files.
+     */
+    public static final String DEFAULT_DIR = "DraughtsTablebase";
+
+    // The largest distance that can be stored in a byte.
+    private static final int MAX_DISTANCE = 126;
+    // The byte stored for a position whose result is not known.
+    private static final byte UNRESOLVED = Byte.MIN_VALUE;
+    // The squares on which a man would already have been crowned.
+    private static final int RED_KINGS_ROW = 0x0000000F;
+    private static final int WHITE_KINGS_ROW = 0xF0000000;
+    // The number of ways of choosing k of n squares, for n up to 32.
+    private static final long[][] BINOMIAL = new long[33][13];
+
+    static {
+        for (int n = 0; n <= 32; n++) {
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= 12 && k <= n; k++) {
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + (k <= n - 1 ? BINOMIAL[n - 1][k] : 0);
+            }
+        }
+    }
+
+    private final File directory;
+    private final Map<Integer, ByteBuffer> slices = new ConcurrentHashMap<Integer, ByteBuffer>();
+    private final int maxPieces;
+
+    /**
+     * Constructs a new Tablebase object reading the files in a directory.
+     * Files are mapped the first time they are probed.
+     *
+     * @param directory the directory holding the tablebase files.
+     */
+    public Tablebase(File directory) {
+        this.directory = directory;
+        int pieces = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                int[] counts = countsOf(file.getName());
+                if (counts != null) pieces = Math.max(pieces, counts[0] + counts[1] + counts[2] + counts[3]);
+            }
+        }
+        maxPieces = pieces;
+    }
+
+    /**
+     * Returns the largest number of Pieces of the positions in the tablebase.
+     *
+     * @return the largest number of Pieces of the positions in the tablebase.
+     */
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    /**
+     * Returns the value of a position for the player to move, or UNKNOWN
+     * if it is not in the tablebase or a multi-jump is in progress.
+     *
+     * @param board the position to be probed.
+     * @return the value of the position for the player to move.
+     */
+    public int probe(BitBoard board) {
+        if (board.getJumping() >= 0) return UNKNOWN;
+        return probe(board.getCurrentPlayer(), board.getRed(), board.getWhite(), board.getKings());
+    }
+
+    // Returns the value of a position given as masks, or UNKNOWN.
+    private int probe(Colour currentPlayer, int red, int white, int kings) {
+        int trivial = trivialValue(currentPlayer, red, white, kings);
+        if (trivial != UNKNOWN) return trivial;
+        if (Integer.bitCount(red | white) > maxPieces) return UNKNOWN;
+        int slice = sliceKey(red, white, kings);
+        ByteBuffer buffer = slices.get(slice);
+        if (buffer == null) {
+            buffer = map(slice);
+            if (buffer == null) return UNKNOWN;
+            slices.put(slice, buffer);
+        }
+        int value = buffer.get((int) index(currentPlayer, red, white, kings));
+        return value == UNRESOLVED ? UNKNOWN : value;
+    }
+
+    // Maps the file of a slice, returning null if there is no file.
+    // @param slice the key of the slice.
+    // @return the mapped buffer of the slice.
+    private ByteBuffer map(int slice) {
+        File file = new File(directory, fileName(slice));
+        if (!file.exists()) return null;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = input.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            System.err.println("Error mapping tablebase file " + file + ".");
+            return null;
+        }
+    }
+
+    /**
+     * Returns true if a value is a win for the player to move.
+     *
+     * @param value the value of a position.
+     * @return true if a value is a win for the player to move.
+     */
+    public static boolean isWin(int value) {
+        return value > 0 && value != UNKNOWN;
+    }
+
+    /**
+     * Returns true if a value is a loss for the player to move.
+     *
+     * @param value the value of a position.
+     * @return true if a value is a loss for the player to move.
+     */
+    public static boolean isLoss(int value) {
+        return value < 0 && value != UNKNOWN;
+    }
+
+    /**
+     * Returns the number of turns until the game ends for a win or a loss.
+     *
+     * @param value the value of a position.
+     * @return the number of turns until the game ends.
+     */
+    public static int distance(int value) {
+        return value > 0 ? value : -value - 1;
+    }
+
+    // Returns the value of a position in which a player has no Pieces,
+    // or UNKNOWN if both players have Pieces.
+    private static int trivialValue(Colour currentPlayer, int red, int white, int kings) {
+        int own = currentPlayer == Colour.Red ? red : white;
+        int opponent = currentPlayer == Colour.Red ? white : red;
+        if (own == 0) return -1;
+        if (opponent != 0) return UNKNOWN;
+        BitBoard board = new BitBoard(currentPlayer, red, white, kings);
+        return board.hasMoves() ? 1 : -1;
+    }
+
+    // Returns the key of the slice holding a position.
+    private static int sliceKey(int red, int white, int kings) {
+        return sliceKey(Integer.bitCount(red & ~kings), Integer.bitCount(red & kings),
+                        Integer.bitCount(white & ~kings), Integer.bitCount(white & kings));
+    }
+
+    // Returns the key of a slice from its Piece counts.
+    private static int sliceKey(int redMen, int redKings, int whiteMen, int whiteKings) {
+        return redMen | (redKings << 4) | (whiteMen << 8) | (whiteKings << 12);
+    }
+
+    // Returns the Piece counts of a slice key.
+    private static int[] counts(int slice) {
+        return new int[] {slice & 0xF, (slice >> 4) & 0xF, (slice >> 8) & 0xF, (slice >> 12) & 0xF};
+    }
+
+    // Returns the name of the file of a slice, such as r10w11.tb.
+    private static String fileName(int slice) {
+        int[] counts = counts(slice);
+        return "r" + counts[0] + counts[1] + "w" + counts[2] + counts[3] + ".tb";
+    }
+
+    // Returns the Piece counts of a file name, or null if it is not a tablebase file.
+    private static int[] countsOf(String name) {
+        if (!name.matches("r\\d\\dw\\d\\d\\.tb")) return null;
+        return new int[] {name.charAt(1) - '0', name.charAt(2) - '0', name.charAt(4) - '0', name.charAt(5) - '0'};
+    }
+
+    // Returns the number of positions with one player to move in a slice.
+    private static long sliceSize(int slice) {
+        long size = 1;
+        for (int count : counts(slice)) {
+            size *= BINOMIAL[32][count];
+        }
+        return size;
+    }
+
+    // Returns the rank of a set of squares in the combinatorial number system.
+    private static long rank(int mask) {
+        long rank = 0;
+        int i = 1;
+        for (int bits = mask; bits != 0; bits &= bits - 1) {
+            rank += BINOMIAL[Integer.numberOfTrailingZeros(bits)][i++];
+        }
+        return rank;
+    }
+
+    // Returns the set of k squares with a rank.
+    private static int unrank(long rank, int k) {
+        int mask = 0;
+        for (int i = k; i > 0; i--) {
+            int square = i - 1;
+            while (square + 1 < 32 && BINOMIAL[square + 1][i] <= rank) square++;
+            rank -= BINOMIAL[square][i];
+            mask |= 1 << square;
+        }
+        return mask;
+    }
+
+    // Returns the index of a position in the file of its slice.
+    private static long index(Colour currentPlayer, int red, int white, int kings) {
+        long redKings = BINOMIAL[32][Integer.bitCount(red & kings)];
+        long whiteMen = BINOMIAL[32][Integer.bitCount(white & ~kings)];
+        long whiteKings = BINOMIAL[32][Integer.bitCount(white & kings)];
+        long index = rank(red & ~kings);
+        index = (index * redKings) + rank(red & kings);
+        index = (index * whiteMen) + rank(white & ~kings);
+        index = (index * whiteKings) + rank(white & kings);
+        if (currentPlayer == Colour.White) {
+            index += BINOMIAL[32][Integer.bitCount(red & ~kings)] * redKings * whiteMen * whiteKings;
+        }
+        return index;
+    }
+
+    /**
+     * Generates the tablebase files for all positions with up to a number
+     * of Pieces by retrograde analysis, checking every value against its
+     * successors. Slices that cannot reach each other are generated in parallel.
+     *
+     * @param directory the directory to write the files to.
+     * @param maxPieces the largest number of Pieces, at most 6.
+     * @param verbose true if a line is printed as each slice is written.
+     * @throws IOException if a file cannot be written.
+     * @throws IllegalStateException if a generated value fails the check.
+     * @throws IllegalArgumentException if maxPieces is not between 2 and 6.
+     */
+    public static void generate(File directory, int maxPieces, boolean verbose) throws IOException {
+        if (maxPieces < 2 || maxPieces > 6) throw new IllegalArgumentException();
+        directory.mkdirs();
+        Map<Integer, byte[]> done = new ConcurrentHashMap<Integer, byte[]>();
+        // A capture leads to fewer Pieces and a crowning to fewer men, so slices
+        // are generated by total Pieces and then by men, and slices with the same
+        // totals never lead to each other.
+        for (int pieces = 2; pieces <= maxPieces; pieces++) {
+            for (int men = 0; men <= pieces; men++) {
+                List<Integer> group = new ArrayList<Integer>();
+                for (int redPieces = 1; redPieces < pieces; redPieces++) {
+                    int whitePieces = pieces - redPieces;
+                    for (int redMen = 0; redMen <= Math.min(redPieces, men); redMen++) {
+                        int whiteMen = men - redMen;
+                        if (whiteMen < 0 || whiteMen > whitePieces) continue;
+                        group.add(sliceKey(redMen, redPieces - redMen, whiteMen, whitePieces - whiteMen));
+                    }
+                }
+                List<Exception> errors = Collections.synchronizedList(new ArrayList<Exception>());
+                group.parallelStream().forEach(slice -> {
+                    try {
+                        byte[] values = new Generator(slice, done).generate();
+                        write(new File(directory, fileName(slice)), values);
+                        if (verbose) System.out.println(fileName(slice) + ": " + values.length + " positions");
+                    } catch (IOException e) {
+                        errors.add(e);
+                    }
+                });
+                if (!errors.isEmpty()) throw (IOException) errors.get(0);
+            }
+        }
+    }
+
+    // Writes the values of a slice to a file.
+    private static void write(File file, byte[] values) throws IOException {
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.getChannel().write(ByteBuffer.wrap(values));
+        }
+    }
+
+    /**
+     * Generates a tablebase.
+     *
+     * @param args the arguments provided by the user.
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: Tablebase pieces [directory]");
+            System.exit(1);
+        }
+        File directory = new File(args.length > 1 ? args[1] : DEFAULT_DIR);
+        try {
+            long start = System.currentTimeMillis();
+            generate(directory, Integer.parseInt(args[0]), true);
+            System.out.println("Generated in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (IOException e) {
+            System.err.println("Error writing tablebase. " + e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * A class to generate one slice by retrograde analysis. The successors
+     * of each position are generated once, to count those in the slice and
+     * to find the best result among those in slices already generated. Then
+     * the positions are resolved in order of distance: each newly known loss
+     * makes its predecessors wins, and each newly known win reduces the count
+     * of unresolved successors of its predecessors, making a loss of any
+     * position left with only wins. Predecessors are found by taking back a
+     * move, as only moves without a capture or a crowning stay in the slice.
+     */
+    private static class Generator {
+
+        // The deepest ply of a multi-jump.
+        private static final int MAX_PLY = 32;
+        // The most predecessors a position can have.
+        private static final int MAX_PREDECESSORS = 48;
+        // The count of a position that cannot be a loss.
+        private static final byte CANNOT_LOSE = -1;
+        // The count of a position that cannot be a loss, and is not a draw
+        // either unless it is a win, because a successor in an earlier slice
+        // is unresolved or is a loss too long to be stored.
+        private static final byte UNCERTAIN = -2;
+
+        private final int slice;
+        private final int[] counts;
+        private final long size;
+        private final Map<Integer, byte[]> done;
+        private final BitBoard[] boards = new BitBoard[MAX_PLY + 1];
+        private final int[][] moves = new int[MAX_PLY + 1][BitBoard.MAX_MOVES];
+        private final int[] masks = new int[4];
+        private final long[] predecessors = new long[MAX_PREDECESSORS];
+        private final int[] wins = new int[MAX_DISTANCE + 1];
+        private final int[] losses = new int[MAX_DISTANCE + 1];
+        private byte[] values;
+        private byte[] unresolvedCounts;
+        private byte[] maxWins;
+        private boolean counting;
+        private int inSlice;
+        private int minLoss;
+        private int maxWin;
+        private boolean allWins;
+        private boolean unresolved;
+
+        // Constructs a new Generator object.
+        // @param slice the key of the slice to generate.
+        // @param done the values of the slices already generated.
+        Generator(int slice, Map<Integer, byte[]> done) {
+            this.slice = slice;
+            this.done = done;
+            counts = counts(slice);
+            size = sliceSize(slice);
+            for (int i = 0; i <= MAX_PLY; i++) {
+                boards[i] = new BitBoard(Colour.Red, 0, 0, 0);
+            }
+        }
+
+        // Returns the values of the slice, and adds them to the generated slices.
+        // @throws IllegalStateException if a value fails the consistency check.
+        byte[] generate() {
+            values = new byte[(int) (size * 2)];
+            unresolvedCounts = new byte[values.length];
+            maxWins = new byte[values.length];
+            done.put(slice, values);
+            initialise();
+            for (int distance = 0; distance <= MAX_DISTANCE + 1; distance++) {
+                if (distance > 0 && losses[distance - 1] > 0) {
+                    int remaining = losses[distance - 1];
+                    byte loss = (byte) -distance;
+                    for (long index = 0; remaining > 0; index++) {
+                        if (values[(int) index] != loss) continue;
+                        remaining--;
+                        int count = predecessors(index);
+                        for (int i = 0; i < count; i++) {
+                            setWin(predecessors[i], distance);
+                        }
+                    }
+                }
+                if (distance <= MAX_DISTANCE && wins[distance] > 0) {
+                    int remaining = wins[distance];
+                    for (long index = 0; remaining > 0; index++) {
+                        if (values[(int) index] != distance) continue;
+                        remaining--;
+                        int count = predecessors(index);
+                        for (int i = 0; i < count; i++) {
+                            int predecessor = (int) predecessors[i];
+                            if (unresolvedCounts[predecessor] <= 0) continue;
+                            maxWins[predecessor] = (byte) Math.max(maxWins[predecessor], distance);
+                            if (--unresolvedCounts[predecessor] == 0 && values[predecessor] == 0) {
+                                setLoss(predecessor, maxWins[predecessor] + 1);
+                            }
+                        }
+                    }
+                }
+            }
+            markUnresolved();
+            unresolvedCounts = null;
+            maxWins = null;
+            check();
+            return values;
+        }
+
+        // Looks at the successors of every position, resolving those with no
+        // successors in the slice and noting the rest of them.
+        private void initialise() {
+            counting = true;
+            for (long index = 0; index < size * 2; index++) {
+                if (!decode(index)) continue;
+                if (!boards[0].hasMoves()) {
+                    setLoss(index, 0);
+                    continue;
+                }
+                successors();
+                if (minLoss < MAX_DISTANCE) setWin(index, minLoss + 1);
+                else if (minLoss != Integer.MAX_VALUE) unresolved = true;
+                maxWins[(int) index] = (byte) maxWin;
+                if (unresolved) unresolvedCounts[(int) index] = UNCERTAIN;
+                else if (!allWins) unresolvedCounts[(int) index] = CANNOT_LOSE;
+                else if (inSlice > 0) unresolvedCounts[(int) index] = (byte) inSlice;
+                else if (values[(int) index] == 0) setLoss(index, maxWin + 1);
+            }
+            counting = false;
+        }
+
+        // Stores a win for a position unless it already has a shorter one.
+        // A position that would be a win in more than MAX_DISTANCE turns
+        // is stored as unresolved if it is not a win at all so far.
+        // @param index the index of the position.
+        // @param distance the number of turns to the win.
+        private void setWin(long index, int distance) {
+            int value = values[(int) index];
+            if (distance > MAX_DISTANCE) {
+                if (value == 0) values[(int) index] = UNRESOLVED;
+                return;
+            }
+            if (value < 0 || (value > 0 && value <= distance)) return;
+            if (value > 0) wins[value]--;
+            values[(int) index] = (byte) distance;
+            wins[distance]++;
+        }
+
+        // Stores a loss for a position, or unresolved if it is longer than
+        // MAX_DISTANCE turns.
+        // @param index the index of the position.
+        // @param distance the number of turns to the loss.
+        private void setLoss(long index, int distance) {
+            if (distance > MAX_DISTANCE) {
+                values[(int) index] = UNRESOLVED;
+                return;
+            }
+            values[(int) index] = (byte) -(distance + 1);
+            losses[distance]++;
+        }
+
+        // Marks the positions left as draws that can move to an unresolved
+        // position as unresolved too. They could reach a win there, so they
+        // are not known to be draws.
+        private void markUnresolved() {
+            ArrayDeque<Long> queue = new ArrayDeque<Long>();
+            for (long index = 0; index < size * 2; index++) {
+                if (values[(int) index] == 0 && unresolvedCounts[(int) index] == UNCERTAIN) {
+                    values[(int) index] = UNRESOLVED;
+                }
+                if (values[(int) index] == UNRESOLVED) queue.add(index);
+            }
+            while (!queue.isEmpty()) {
+                int count = predecessors(queue.remove());
+                for (int i = 0; i < count; i++) {
+                    if (values[(int) predecessors[i]] != 0) continue;
+                    values[(int) predecessors[i]] = UNRESOLVED;
+                    queue.add(predecessors[i]);
+                }
+            }
+        }
+
+        // Checks every value against the values of its successors: a win in
+        // d turns must have a loss in d - 1 turns and none shorter, a loss
+        // in d turns must have only wins, the longest in d - 1 turns, and a
+        // draw must have neither a loss nor an unresolved position.
+        // @throws IllegalStateException if a value is wrong.
+        private void check() {
+            for (long index = 0; index < size * 2; index++) {
+                int value = values[(int) index];
+                if (value == UNRESOLVED || !decode(index)) continue;
+                int expected;
+                if (!boards[0].hasMoves()) {
+                    expected = -1;
+                } else {
+                    successors();
+                    if (minLoss != Integer.MAX_VALUE) expected = minLoss + 1;
+                    else if (allWins) expected = -(maxWin + 2);
+                    else expected = unresolved ? UNRESOLVED : 0;
+                }
+                if (value != expected) {
+                    throw new IllegalStateException(fileName(slice) + ": position " + index
+                                                    + " is " + value + " but should be " + expected);
+                }
+            }
+        }
+
+        // Sets the first board to the position at an index, returning
+        // false if the index is not a legal position.
+        private boolean decode(long index) {
+            Colour currentPlayer = index < size ? Colour.Red : Colour.White;
+            long rest = index % size;
+            for (int i = 3; i >= 0; i--) {
+                long groupSize = BINOMIAL[32][counts[i]];
+                masks[i] = unrank(rest % groupSize, counts[i]);
+                rest /= groupSize;
+            }
+            int red = masks[0] | masks[1];
+            int white = masks[2] | masks[3];
+            int all = masks[0] ^ masks[1] ^ masks[2] ^ masks[3];
+            if (Integer.bitCount(all) != counts[0] + counts[1] + counts[2] + counts[3]) return false;
+            if ((masks[0] & RED_KINGS_ROW) != 0 || (masks[2] & WHITE_KINGS_ROW) != 0) return false;
+            boards[0].set(currentPlayer, red, white, masks[1] | masks[3]);
+            return true;
+        }
+
+        // Fills the predecessors array with the indices of the positions in
+        // the slice from which the opponent could have reached the position
+        // at an index, by a move without a capture or a crowning.
+        // @param index the index of the position.
+        // @return the number of predecessors.
+        private int predecessors(long index) {
+            decode(index);
+            BitBoard board = boards[0];
+            Colour previous = board.getCurrentPlayer() == Colour.Red ? Colour.White : Colour.Red;
+            int red = board.getRed();
+            int white = board.getWhite();
+            int kings = board.getKings();
+            int own = previous == Colour.Red ? red : white;
+            int forward = previous == Colour.Red ? 0 : 2;
+            int count = 0;
+            for (int pieces = own; pieces != 0; pieces &= pieces - 1) {
+                int to = pieces & -pieces;
+                boolean isKing = (kings & to) != 0;
+                for (int direction = 0; direction < 4; direction++) {
+                    if ((direction & 2) != forward && !isKing) continue;
+                    int from = BitBoard.step(direction ^ 3, to);
+                    if (from == 0 || ((red | white) & from) != 0) continue;
+                    int moved = from | to;
+                    predecessors[count++] = index(previous,
+                                                  previous == Colour.Red ? red ^ moved : red,
+                                                  previous == Colour.White ? white ^ moved : white,
+                                                  isKing ? kings ^ moved : kings);
+                }
+            }
+            return count;
+        }
+
+        // Looks at the positions after each whole turn from the first board,
+        // noting how many are in the slice while counting, the shortest loss
+        // for the opponent, the longest win for the opponent, whether all are
+        // wins for the opponent and whether any is unresolved.
+        private void successors() {
+            inSlice = 0;
+            minLoss = Integer.MAX_VALUE;
+            maxWin = 0;
+            allWins = true;
+            unresolved = false;
+            successors(0);
+        }
+
+        // Looks at the positions after each whole turn from the board at a ply.
+        // @param ply the ply of the board.
+        private void successors(int ply) {
+            BitBoard board = boards[ply];
+            int[] list = moves[ply];
+            int count = board.generateMoves(list);
+            for (int i = 0; i < count; i++) {
+                BitBoard next = boards[ply + 1];
+                next.copyFrom(board);
+                if (next.play(list[i])) {
+                    successors(ply + 1);
+                    continue;
+                }
+                int red = next.getRed();
+                int white = next.getWhite();
+                int kings = next.getKings();
+                int value = trivialValue(next.getCurrentPlayer(), red, white, kings);
+                if (value == UNKNOWN) {
+                    int key = sliceKey(red, white, kings);
+                    if (counting && key == slice) {
+                        inSlice++;
+                        continue;
+                    }
+                    value = done.get(key)[(int) index(next.getCurrentPlayer(), red, white, kings)];
+                }
+                if (value == UNRESOLVED) {
+                    unresolved = true;
+                    allWins = false;
+                } else if (value <= 0) {
+                    allWins = false;
+                    if (value < 0) minLoss = Math.min(minLoss, distance(value));
+                } else {
+                    maxWin = Math.max(maxWin, distance(value));
+                }
+            }
+        }
+
+    }
+
+}
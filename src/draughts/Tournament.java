@@ -0,0 +1,384 @@
+package draughts;
+
+import java.util.*;
+import java.io.*;
+import java.util.concurrent.*;
+
+/**
+ * A class to play many games between two Players without a window,
+ * one DraughtsModel per game, spread over a pool of threads.
+ * Games share no mutable state, so throughput grows with the number of cores.
+ * Usage: Tournament playerA playerB [-games n] [-threads n] [-maxTurns n]
+ * [-openingTurns n] [-seed n]
+ * A player is "random", "engine" or "mcts" followed by options, for example
+ * "engine:depth=6,hash=4" or "engine:time=100,threads=2" or "engine:nodes=20000"
+ * or "mcts:playouts=20000,memory=16,threads=2".
+ */
+
+public class Tournament {
+
+    // The result of a game for the first player.
+    private static final int WIN = 2;
+    private static final int DRAW = 1;
+    private static final int LOSS = 0;
+
+    private final String playerA;
+    private final String playerB;
+    private int games = 100;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int maxTurns = 200;
+    private int openingTurns = 4;
+    private long seed = 1;
+    // The Tablebases and OpeningBooks opened for the games, by option.
+    private final Map<String, Object> opened = new HashMap<String, Object>();
+
+    /**
+     * Constructs a new Tournament object.
+     *
+     * @param playerA the description of the first Player.
+     * @param playerB the description of the second Player.
+     */
+    public Tournament(String playerA, String playerB) {
+        this.playerA = playerA;
+        this.playerB = playerB;
+    }
+
+    /**
+     * Sets the number of games to play. The Players swap Colours each game.
+     *
+     * @param games the number of games to play.
+     */
+    public void setGames(int games) {
+        this.games = games;
+    }
+
+    /**
+     * Sets the number of games played at once.
+     *
+     * @param threads the number of games played at once.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the number of turns after which a game is a draw.
+     *
+     * @param maxTurns the number of turns after which a game is a draw.
+     */
+    public void setMaxTurns(int maxTurns) {
+        this.maxTurns = maxTurns;
+    }
+
+    /**
+     * Sets the number of random turns at the start of each game, so
+     * that games between deterministic Players differ.
+     *
+     * @param openingTurns the number of random turns at the start of each game.
+     */
+    public void setOpeningTurns(int openingTurns) {
+        this.openingTurns = openingTurns;
+    }
+
+    /**
+     * Sets the seed from which each games random choices are derived.
+     *
+     * @param seed the seed from which each games random choices are derived.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Plays the games and returns the number of wins, draws and losses
+     * for the first Player.
+     *
+     * @return an array of the wins, draws and losses for the first Player.
+     * @throws InterruptedException if interrupted while waiting for the games.
+     * @throws ExecutionException if a game throws an exception.
+     */
+    public int[] play() throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < games; i++) {
+                final int game = i;
+                results.add(pool.submit(() -> playGame(game)));
+            }
+            int[] totals = new int[3];
+            for (Future<Integer> result : results) {
+                int score = result.get();
+                if (score == WIN) totals[0]++;
+                else if (score == DRAW) totals[1]++;
+                else totals[2]++;
+            }
+            return totals;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Plays one game and returns the result for the first Player.
+    // The first Player is Red in even games and White in odd games.
+    // @param game the number of the game.
+    // @return WIN, DRAW or LOSS.
+    private int playGame(int game) {
+        long gameSeed = seed * 1000003L + game;
+        Player a = createPlayer(playerA, gameSeed, opened);
+        Player b = createPlayer(playerB, gameSeed + 1, opened);
+        Colour colourA = (game % 2 == 0) ? Colour.Red : Colour.White;
+        GamePlayer players = new GamePlayer(colourA == Colour.Red ? a : b,
+                                            colourA == Colour.Red ? b : a,
+                                            openingTurns, gameSeed);
+        DraughtsModel model = new DraughtsModel("game" + game, players);
+        model.setMaxTurns(maxTurns);
+        players.setModel(model);
+        a.setModel(model);
+        b.setModel(model);
+        try {
+            model.start();
+        } finally {
+            a.shutdown();
+            b.shutdown();
+        }
+        Colour winner = model.getWinner();
+        if (winner == null) return DRAW;
+        return winner == colourA ? WIN : LOSS;
+    }
+
+    /**
+     * Returns a new Player from its description.
+     *
+     * @param description "random", or "engine" with options such as
+     * "engine:depth=6,time=100,nodes=20000,hash=4,threads=2,tablebase=DraughtsTablebase,book=draughts.book,weights=file",
+     * or "mcts" with options such as "mcts:time=100,playouts=20000,memory=16,threads=2".
+     * @param seed the seed for any random choices.
+     * @return a new Player.
+     * @throws IllegalArgumentException if the description is not recognised.
+     */
+    public static Player createPlayer(String description, long seed) {
+        return createPlayer(description, seed, new HashMap<String, Object>());
+    }
+
+    /**
+     * Returns a new Player from its description, sharing the Tablebase and
+     * OpeningBook it reads with the other Players created with the same map,
+     * so that each file is opened once. Both are read only, so Players on
+     * different threads may share them.
+     *
+     * @param description the description of the Player, as for createPlayer(String, long).
+     * @param seed the seed for any random choices.
+     * @param opened the Tablebases and OpeningBooks already opened, by option,
+     * to which any the Player opens are added.
+     * @return a new Player.
+     * @throws IllegalArgumentException if the description is not recognised.
+     */
+    public static Player createPlayer(String description, long seed, Map<String, Object> opened) {
+        String[] parts = description.split(":", 2);
+        if (parts[0].equals("random")) return new RandomPlayer(seed);
+        if (parts[0].equals("mcts")) return createMonteCarloPlayer(description, parts, seed);
+        if (!parts[0].equals("engine")) throw new IllegalArgumentException(description);
+        int depth = Engine.MAX_DEPTH;
+        long time = 0;
+        long nodes = 0;
+        int hash = 4;
+        int threads = 1;
+        String tablebase = null;
+        String book = null;
+        String weights = null;
+        if (parts.length > 1) {
+            for (String option : parts[1].split(",")) {
+                String[] pair = option.split("=");
+                if (pair.length != 2) throw new IllegalArgumentException(description);
+                if (pair[0].equals("depth")) depth = Integer.parseInt(pair[1]);
+                else if (pair[0].equals("time")) time = Long.parseLong(pair[1]);
+                else if (pair[0].equals("nodes")) nodes = Long.parseLong(pair[1]);
+                else if (pair[0].equals("hash")) hash = Integer.parseInt(pair[1]);
+                else if (pair[0].equals("threads")) threads = Integer.parseInt(pair[1]);
+                else if (pair[0].equals("tablebase")) tablebase = pair[1];
+                else if (pair[0].equals("book")) book = pair[1];
+                else if (pair[0].equals("weights")) weights = pair[1];
+                else throw new IllegalArgumentException(description);
+            }
+        }
+        if (depth == Engine.MAX_DEPTH && time == 0 && nodes == 0) depth = 6;
+        Evaluation evaluation = new Evaluation();
+        if (weights != null) {
+            try {
+                evaluation = Evaluation.load(new File(weights));
+            } catch (IOException e) {
+                throw new IllegalArgumentException(description + ": " + e.getMessage());
+            }
+        }
+        Engine engine = new Engine(evaluation, new TranspositionTable(hash));
+        engine.setMaxDepth(depth);
+        engine.setTimeLimit(time);
+        engine.setNodeLimit(nodes);
+        engine.setThreads(threads);
+        try {
+            if (tablebase != null) engine.setTablebase((Tablebase) open(opened, "tablebase=" + tablebase));
+            if (book != null) return new BookPlayer(engine, (OpeningBook) open(opened, "book=" + book), seed);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(description + ": " + e.getMessage());
+        }
+        return new ComputerPlayer(engine);
+    }
+
+    // Returns the Tablebase or OpeningBook named by an option, opening it
+    // the first time it is asked for.
+    // @param opened the Tablebases and OpeningBooks already opened, by option.
+    // @param option the option naming the file, such as "book=draughts.book".
+    // @return the Tablebase or OpeningBook named by the option.
+    // @throws IOException if the OpeningBook cannot be read.
+    private static Object open(Map<String, Object> opened, String option) throws IOException {
+        synchronized (opened) {
+            Object file = opened.get(option);
+            if (file == null) {
+                String[] pair = option.split("=", 2);
+                if (pair[0].equals("book")) file = new OpeningBook(new File(pair[1]));
+                else file = new Tablebase(new File(pair[1]));
+                opened.put(option, file);
+            }
+            return file;
+        }
+    }
+
+    // Returns a new MonteCarloPlayer from its description.
+    // @param description the description of the Player.
+    // @param parts the description split into "mcts" and its options.
+    // @param seed the seed for the random playouts.
+    // @return a new MonteCarloPlayer.
+    private static Player createMonteCarloPlayer(String description, String[] parts, long seed) {
+        long time = 0;
+        long playouts = 0;
+        int memory = MonteCarloPlayer.DEFAULT_MEMORY;
+        int threads = 1;
+        if (parts.length > 1) {
+            for (String option : parts[1].split(",")) {
+                String[] pair = option.split("=");
+                if (pair.length != 2) throw new IllegalArgumentException(description);
+                if (pair[0].equals("time")) time = Long.parseLong(pair[1]);
+                else if (pair[0].equals("playouts")) playouts = Long.parseLong(pair[1]);
+                else if (pair[0].equals("memory")) memory = Integer.parseInt(pair[1]);
+                else if (pair[0].equals("threads")) threads = Integer.parseInt(pair[1]);
+                else throw new IllegalArgumentException(description);
+            }
+        }
+        if (time == 0 && playouts == 0) playouts = 20000;
+        MonteCarloPlayer player = new MonteCarloPlayer(memory, seed);
+        player.setTimeLimit(time);
+        player.setPlayoutLimit(playouts);
+        player.setThreads(threads);
+        return player;
+    }
+
+    /**
+     * Returns the Elo difference for a score, and its 95% error margin.
+     *
+     * @param wins the number of wins.
+     * @param draws the number of draws.
+     * @param losses the number of losses.
+     * @return an array of the Elo difference and its error margin, both 0 if there were no games.
+     */
+    public static double[] elo(int wins, int draws, int losses) {
+        double n = wins + draws + losses;
+        if (n == 0) return new double[] {0, 0};
+        double score = (wins + (draws / 2.0)) / n;
+        double variance = (wins * Math.pow(1 - score, 2) + draws * Math.pow(0.5 - score, 2)
+                           + losses * Math.pow(score, 2)) / n;
+        double margin = 1.96 * Math.sqrt(variance / n);
+        double elo = eloFromScore(score);
+        double error = (eloFromScore(score + margin) - eloFromScore(score - margin)) / 2;
+        return new double[] {elo, error};
+    }
+
+    // Returns the Elo difference that gives an expected score.
+    // @param score the expected score.
+    // @return the Elo difference that gives an expected score.
+    private static double eloFromScore(double score) {
+        score = Math.max(1e-6, Math.min(1 - 1e-6, score));
+        return -400 * Math.log10((1 / score) - 1);
+    }
+
+    /**
+     * Plays a tournament and prints the results.
+     *
+     * @param args the arguments provided by the user.
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: Tournament playerA playerB [-games n] [-threads n]"
+                               + " [-maxTurns n] [-openingTurns n] [-seed n]");
+            System.exit(1);
+        }
+        Tournament tournament = new Tournament(args[0], args[1]);
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-games")) tournament.setGames(Integer.parseInt(args[i + 1]));
+            else if (args[i].equals("-threads")) tournament.setThreads(Integer.parseInt(args[i + 1]));
+            else if (args[i].equals("-maxTurns")) tournament.setMaxTurns(Integer.parseInt(args[i + 1]));
+            else if (args[i].equals("-openingTurns")) tournament.setOpeningTurns(Integer.parseInt(args[i + 1]));
+            else if (args[i].equals("-seed")) tournament.setSeed(Long.parseLong(args[i + 1]));
+        }
+        try {
+            long start = System.currentTimeMillis();
+            int[] totals = tournament.play();
+            long time = Math.max(1, System.currentTimeMillis() - start);
+            int played = totals[0] + totals[1] + totals[2];
+            double[] elo = elo(totals[0], totals[1], totals[2]);
+            System.out.println(args[0] + " vs " + args[1]);
+            System.out.println("Games: " + played + " Wins: " + totals[0] + " Draws: " + totals[1]
+                               + " Losses: " + totals[2]);
+            System.out.println(String.format("Elo: %+.1f +/- %.1f", elo[0], elo[1]));
+            System.out.println(String.format("Time: %dms, %.1f games per second on %d threads",
+                                             time, (played * 1000.0) / time, tournament.threads));
+        } catch (Exception e) {
+            System.err.println("Error playing tournament. " + e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * A Player that passes each request to the Player whose turn it is,
+     * after playing a number of random opening turns.
+     */
+    private static class GamePlayer implements Player {
+
+        private final Player red;
+        private final Player white;
+        private final int openingTurns;
+        private final RandomPlayer random;
+        private DraughtsModel model;
+
+        // Constructs a new GamePlayer object.
+        // @param red the Player for Red.
+        // @param white the Player for White.
+        // @param openingTurns the number of random turns at the start of the game.
+        // @param seed the seed for the random turns.
+        GamePlayer(Player red, Player white, int openingTurns, long seed) {
+            this.red = red;
+            this.white = white;
+            this.openingTurns = openingTurns;
+            random = new RandomPlayer(seed);
+        }
+
+        // Sets the game being played.
+        // @param model the game being played.
+        @Override
+        public void setModel(DraughtsModel model) {
+            this.model = model;
+        }
+
+        // Returns a random Move during the opening turns, and otherwise
+        // the Move of the Player whose turn it is.
+        // @param validMoves the Set of valid Moves.
+        // @return the Move chosen.
+        @Override
+        public Move notify(Set<Move> validMoves) {
+            if (model.getTurns() <= openingTurns) return random.notify(validMoves);
+            if (model.getCurrentPlayer().equals(Colour.Red)) return red.notify(validMoves);
+            return white.notify(validMoves);
+        }
+
+    }
+
+}
@@ -0,0 +1,162 @@
+package draughts;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * A fixed size hash table of search results, indexed by Zobrist key.
+ * Each entry is two longs: the key exclusive or'd with the data, and the
+ * data itself. A reader only accepts an entry if the two still match its
+ * key, so entries torn by another thread writing at the same time are
+ * treated as misses and no locks are needed.
+ * The data packs the best Move, score, depth, bound and search generation.
+ */
+
+public class TranspositionTable {
+
+    /**
+     * The bound of a score that is exact.
+     */
+    public static final int EXACT = 1;
+
+    /**
+     * The bound of a score that is at least the stored value.
+     */
+    public static final int LOWER = 2;
+
+    /**
+     * The bound of a score that is at most the stored value.
+     */
+    public static final int UPPER = 3;
+
+    // The bytes used by each entry.
+    private static final int ENTRY_SIZE = 16;
+
+    private final AtomicLongArray entries;
+    private final int mask;
+    private volatile int generation;
+
+    /**
+     * Constructs a new TranspositionTable object using at most the
+     * specified memory. The number of entries is a power of two.
+     *
+     * @param megabytes the memory to use in megabytes.
+     * @throws IllegalArgumentException if megabytes is not between 1 and 16384.
+     */
+    public TranspositionTable(int megabytes) {
+        if (megabytes < 1 || megabytes > 16384) throw new IllegalArgumentException();
+        long size = Long.highestOneBit(((long) megabytes << 20) / ENTRY_SIZE);
+        size = Math.min(size, 1 << 29);
+        entries = new AtomicLongArray((int) size * 2);
+        mask = (int) size - 1;
+    }
+
+    /**
+     * Returns the number of entries in the table.
+     *
+     * @return the number of entries in the table.
+     */
+    public int size() {
+        return mask + 1;
+    }
+
+    /**
+     * Starts a new search, so that entries from older searches are
+     * replaced in preference to those from this one.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * Empties the table.
+     */
+    public void clear() {
+        for (int i = 0; i < entries.length(); i++) {
+            entries.lazySet(i, 0);
+        }
+    }
+
+    /**
+     * Returns the data stored for a key, or 0 if there is none.
+     *
+     * @param key the Zobrist key of the position.
+     * @return the data stored for a key, or 0 if there is none.
+     */
+    public long probe(long key) {
+        int index = ((int) key & mask) << 1;
+        long data = entries.get(index + 1);
+        if ((entries.get(index) ^ data) != key) return 0;
+        return data;
+    }
+
+    /**
+     * Stores a search result. An existing entry for another position is
+     * only replaced if it is from an older search or was searched less deeply.
+     *
+     * @param key the Zobrist key of the position.
+     * @param move the best packed Move, or 0 if there is none.
+     * @param score the score of the position.
+     * @param depth the depth of the search, clamped to 0 to 255.
+     * @param bound EXACT, LOWER or UPPER.
+     */
+    public void store(long key, int move, int score, int depth, int bound) {
+        depth = Math.max(0, Math.min(depth, 0xFF));
+        int index = ((int) key & mask) << 1;
+        long old = entries.get(index + 1);
+        if (old != 0 && (entries.get(index) ^ old) != key
+            && getGeneration(old) == generation && getDepth(old) > depth) return;
+        long data = (move & 0x1FFFFL)
+                    | ((score & 0xFFFFL) << 17)
+                    | ((long) depth << 33)
+                    | ((long) bound << 41)
+                    | ((long) generation << 43);
+        entries.set(index, key ^ data);
+        entries.set(index + 1, data);
+    }
+
+    /**
+     * Returns the packed Move held in an entry.
+     *
+     * @param data the data of the entry.
+     * @return the packed Move held in an entry.
+     */
+    public static int getMove(long data) {
+        return (int) (data & 0x1FFFF);
+    }
+
+    /**
+     * Returns the score held in an entry.
+     *
+     * @param data the data of the entry.
+     * @return the score held in an entry.
+     */
+    public static int getScore(long data) {
+        return (short) (data >>> 17);
+    }
+
+    /**
+     * Returns the depth held in an entry.
+     *
+     * @param data the data of the entry.
+     * @return the depth held in an entry.
+     */
+    public static int getDepth(long data) {
+        return (int) (data >>> 33) & 0xFF;
+    }
+
+    /**
+     * Returns the bound held in an entry.
+     *
+     * @param data the data of the entry.
+     * @return the bound held in an entry.
+     */
+    public static int getBound(long data) {
+        return (int) (data >>> 41) & 0x3;
+    }
+
+    // Returns the search generation held in an entry.
+    private static int getGeneration(long data) {
+        return (int) (data >>> 43) & 0xFF;
+    }
+
+}
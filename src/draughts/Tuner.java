@@ -0,0 +1,465 @@
+package draughts;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
+
+/**
+ * A class to tune the weights of Evaluation from finished games by
+ * Texel's method: the weights are chosen to minimise the mean squared
+ * error between each game's result and a sigmoid of the score of the
+ * positions played in it.
+ * Games are read from GameJournals, which hold every Move of a game, as a
+ * saved game holds only one position and not the result. Each game is
+ * scored by GameJournal.readResult, and games that are not over are
+ * skipped rather than scored as draws. Only quiet positions, where the
+ * player to move has no jump, are kept.
+ * Each position is packed into a long of its features from Red's point of
+ * view and its result, and the longs are sorted so that positions with
+ * the same features are merged into one row holding how many there were
+ * and the sum of their results. Games share so many feature vectors that
+ * this leaves a few percent as many rows as positions, and since the
+ * error of a row follows from those sums, a pass over the rows gives the
+ * same error and gradient as a pass over every position.
+ * The rows are held in primitive arrays, and the error and its gradient
+ * are summed over blocks of rows on all cores with a parallel stream.
+ * Usage: Tuner directory [-iterations n] [-rate r] [-threads n] [-maxTurns n] [-output file]
+ */
+
+public class Tuner {
+
+    // The number of rows summed by each task of a pass.
+    private static final int BLOCK_SIZE = 1 << 12;
+    // The bits for each feature in a packed position. Every feature is
+    // a difference of counts well within -512 to 511.
+    private static final int FEATURE_BITS = 10;
+    private static final int FEATURE_MASK = (1 << FEATURE_BITS) - 1;
+    private static final int FEATURE_OFFSET = 1 << (FEATURE_BITS - 1);
+    // The bits for the result in a packed position, below its features.
+    private static final int RESULT_BITS = 2;
+    // The weight every other weight is measured against, which is not tuned.
+    private static final int ANCHOR = Evaluation.MAN;
+    // The constants of the Adam optimiser.
+    private static final double BETA1 = 0.9;
+    private static final double BETA2 = 0.999;
+    private static final double EPSILON = 1e-8;
+
+    private final short[] features;
+    private final int[] counts;
+    private final long[] results;
+    private final long[] squares;
+    private final int rows;
+    private final long size;
+    private final ForkJoinPool pool;
+    private long games;
+    private long unreadable;
+    private long unfinished;
+
+    // Constructs a new Tuner object over sorted packed positions, merging
+    // those with the same features into rows.
+    // @param positions the packed positions, sorted.
+    // @param pool the pool each pass runs in.
+    private Tuner(long[] positions, ForkJoinPool pool) {
+        this.pool = pool;
+        size = positions.length;
+        int unique = 0;
+        for (int i = 0; i < positions.length; i++) {
+            if (i == 0 || (positions[i] >>> RESULT_BITS) != (positions[i - 1] >>> RESULT_BITS)) unique++;
+        }
+        rows = unique;
+        features = new short[rows * Evaluation.SIZE];
+        counts = new int[rows];
+        results = new long[rows];
+        squares = new long[rows];
+        int row = -1;
+        for (int i = 0; i < positions.length; i++) {
+            long key = positions[i] >>> RESULT_BITS;
+            if (i == 0 || key != (positions[i - 1] >>> RESULT_BITS)) {
+                row++;
+                for (int j = 0; j < Evaluation.SIZE; j++) {
+                    features[(row * Evaluation.SIZE) + j] = (short) (((key >>> (j * FEATURE_BITS)) & FEATURE_MASK) - FEATURE_OFFSET);
+                }
+            }
+            int result = (int) positions[i] & ((1 << RESULT_BITS) - 1);
+            counts[row]++;
+            results[row] += result;
+            squares[row] += result * result;
+        }
+    }
+
+    /**
+     * Reads the quiet positions of a list of GameJournals on a number of
+     * threads. Journals that cannot be read, or whose games are not over,
+     * are counted separately and skipped.
+     *
+     * @param journals the GameJournal files.
+     * @param maxTurns the number of turns after which the games were drawn, or 0 for no limit.
+     * @param threads the number of threads reading journals and tuning.
+     * @return a Tuner over the positions read.
+     * @throws InterruptedException if the thread is interrupted whilst reading.
+     */
+    public static Tuner load(List<File> journals, int maxTurns, int threads) throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        List<Game> read;
+        try {
+            read = pool.submit(() -> journals.parallelStream().map(journal -> read(journal, maxTurns)).collect(Collectors.toList())).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        int size = 0;
+        long unreadable = 0;
+        long unfinished = 0;
+        for (Game game : read) {
+            if (game == null) unreadable++;
+            else if (game.result == GameJournal.UNFINISHED) unfinished++;
+            else size += game.size;
+        }
+        long[] positions = new long[size];
+        int offset = 0;
+        for (Game game : read) {
+            if (game == null || game.result == GameJournal.UNFINISHED) continue;
+            for (int i = 0; i < game.size; i++) {
+                positions[offset++] = (game.positions[i] << RESULT_BITS) | game.result;
+            }
+        }
+        try {
+            pool.submit(() -> Arrays.parallelSort(positions)).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        Tuner tuner = new Tuner(positions, pool);
+        tuner.games = read.size() - unreadable - unfinished;
+        tuner.unreadable = unreadable;
+        tuner.unfinished = unfinished;
+        return tuner;
+    }
+
+    // Replays a journal, collecting the features of its quiet positions
+    // and the result of the game.
+    // @param journal the GameJournal file.
+    // @param maxTurns the number of turns after which the game was drawn, or 0 for no limit.
+    // @return the positions and result of the game, or null if it cannot be read.
+    private static Game read(File journal, int maxTurns) {
+        Game game = new Game();
+        int[] list = new int[BitBoard.MAX_MOVES];
+        int[] position = new int[Evaluation.SIZE];
+        try {
+            game.result = GameJournal.readResult(journal, maxTurns, (board, move) -> {
+                if (board.getJumping() < 0 && isQuiet(board, list)) game.add(board, position);
+            });
+        } catch (Exception e) {
+            return null;
+        }
+        return game;
+    }
+
+    // Returns true if the player to move has no jump.
+    // @param board the position.
+    // @param list the array to generate the Moves into.
+    // @return true if the player to move has no jump.
+    private static boolean isQuiet(BitBoard board, int[] list) {
+        int count = board.generateMoves(list);
+        for (int i = 0; i < count; i++) {
+            if (BitBoard.isJump(list[i])) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of positions loaded.
+     *
+     * @return the number of positions loaded.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of rows the positions were merged into.
+     *
+     * @return the number of distinct feature vectors.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of games the positions were read from.
+     *
+     * @return the number of games read.
+     */
+    public long getGames() {
+        return games;
+    }
+
+    /**
+     * Returns the number of journals that could not be read.
+     *
+     * @return the number of journals that could not be read.
+     */
+    public long getUnreadable() {
+        return unreadable;
+    }
+
+    /**
+     * Returns the number of journals skipped because their games are not over.
+     *
+     * @return the number of journals of unfinished games.
+     */
+    public long getUnfinished() {
+        return unfinished;
+    }
+
+    /**
+     * Returns the mean squared error of the predicted results.
+     *
+     * @param weights the weights, indexed as in Evaluation.
+     * @param scale the scale of the sigmoid.
+     * @return the mean squared error of the predicted results.
+     */
+    public double loss(double[] weights, double scale) {
+        return pass(weights, scale, false)[Evaluation.SIZE];
+    }
+
+    /**
+     * Returns the gradient of the mean squared error with respect to each
+     * weight, followed by the error itself.
+     *
+     * @param weights the weights, indexed as in Evaluation.
+     * @param scale the scale of the sigmoid.
+     * @return SIZE partial derivatives followed by the mean squared error.
+     */
+    public double[] gradient(double[] weights, double scale) {
+        return pass(weights, scale, true);
+    }
+
+    // Sums the error, and its gradient if asked, over every row in
+    // blocks on the pool.
+    // @param weights the weights.
+    // @param scale the scale of the sigmoid.
+    // @param gradient true if the gradient is summed as well as the error.
+    // @return the mean gradient, if summed, followed by the mean error.
+    private double[] pass(double[] weights, double scale, boolean gradient) {
+        int blocks = (rows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        double[] total;
+        try {
+            total = pool.submit(() -> IntStream.range(0, blocks).parallel()
+                                               .mapToObj(block -> sum(block, weights, scale, gradient))
+                                               .reduce(new double[Evaluation.SIZE + 1], Tuner::add)).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+        for (int i = 0; i <= Evaluation.SIZE; i++) {
+            total[i] /= Math.max(1, size);
+        }
+        return total;
+    }
+
+    // Sums the error, and its gradient if asked, over a block of rows.
+    // For a row of n positions with results r, in points, predicted as p,
+    // the summed error is n p^2 - 2 p sum(r) + sum(r^2).
+    // @param block the index of the block.
+    // @param weights the weights.
+    // @param scale the scale of the sigmoid.
+    // @param gradient true if the gradient is summed as well as the error.
+    // @return the summed gradient followed by the summed error.
+    private double[] sum(int block, double[] weights, double scale, boolean gradient) {
+        double[] total = new double[Evaluation.SIZE + 1];
+        int end = Math.min(rows, (block + 1) * BLOCK_SIZE);
+        for (int i = block * BLOCK_SIZE; i < end; i++) {
+            int base = i * Evaluation.SIZE;
+            double score = 0;
+            for (int j = 0; j < Evaluation.SIZE; j++) {
+                score += weights[j] * features[base + j];
+            }
+            double predicted = 1 / (1 + Math.exp(-scale * score));
+            double n = counts[i];
+            double resultSum = results[i] / 2.0;
+            total[Evaluation.SIZE] += (n * predicted * predicted) - (2 * predicted * resultSum) + (squares[i] / 4.0);
+            if (gradient) {
+                double slope = 2 * ((n * predicted) - resultSum) * scale * predicted * (1 - predicted);
+                for (int j = 0; j < Evaluation.SIZE; j++) {
+                    total[j] += slope * features[base + j];
+                }
+            }
+        }
+        return total;
+    }
+
+    // Adds two partial sums.
+    // @param a the first sum.
+    // @param b the second sum.
+    // @return a new array holding the sum.
+    private static double[] add(double[] a, double[] b) {
+        double[] sum = new double[a.length];
+        for (int i = 0; i < a.length; i++) {
+            sum[i] = a[i] + b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the scale of the sigmoid that best predicts the results
+     * with the given weights, found by golden section search.
+     *
+     * @param weights the weights, indexed as in Evaluation.
+     * @return the scale of the sigmoid.
+     */
+    public double fitScale(double[] weights) {
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        double low = 0;
+        double high = 0.1;
+        double a = high - (ratio * (high - low));
+        double b = low + (ratio * (high - low));
+        double lossA = loss(weights, a);
+        double lossB = loss(weights, b);
+        while (high - low > 1e-6) {
+            if (lossA < lossB) {
+                high = b;
+                b = a;
+                lossB = lossA;
+                a = high - (ratio * (high - low));
+                lossA = loss(weights, a);
+            } else {
+                low = a;
+                a = b;
+                lossA = lossB;
+                b = low + (ratio * (high - low));
+                lossB = loss(weights, b);
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    /**
+     * Tunes weights by gradient descent with the Adam optimiser, keeping
+     * the weight of a man fixed so the scores stay in the same units.
+     *
+     * @param start the weights to start from.
+     * @param scale the scale of the sigmoid.
+     * @param iterations the number of passes over the positions.
+     * @param rate the largest change to a weight in one pass.
+     * @return the tuned weights, rounded.
+     */
+    public int[] tune(int[] start, double scale, int iterations, double rate) {
+        double[] weights = new double[Evaluation.SIZE];
+        for (int i = 0; i < Evaluation.SIZE; i++) {
+            weights[i] = start[i];
+        }
+        double[] mean = new double[Evaluation.SIZE];
+        double[] variance = new double[Evaluation.SIZE];
+        for (int t = 1; t <= iterations; t++) {
+            double[] gradient = gradient(weights, scale);
+            for (int i = 0; i < Evaluation.SIZE; i++) {
+                if (i == ANCHOR) continue;
+                mean[i] = (BETA1 * mean[i]) + ((1 - BETA1) * gradient[i]);
+                variance[i] = (BETA2 * variance[i]) + ((1 - BETA2) * gradient[i] * gradient[i]);
+                double corrected = mean[i] / (1 - Math.pow(BETA1, t));
+                double correctedVariance = variance[i] / (1 - Math.pow(BETA2, t));
+                weights[i] -= rate * corrected / (Math.sqrt(correctedVariance) + EPSILON);
+            }
+        }
+        int[] tuned = new int[Evaluation.SIZE];
+        for (int i = 0; i < Evaluation.SIZE; i++) {
+            tuned[i] = (int) Math.round(weights[i]);
+        }
+        return tuned;
+    }
+
+    // Returns weights as doubles.
+    // @param weights the weights.
+    // @return the weights as doubles.
+    private static double[] toDoubles(int[] weights) {
+        double[] doubles = new double[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            doubles[i] = weights[i];
+        }
+        return doubles;
+    }
+
+    /**
+     * Tunes the default weights of Evaluation on the GameJournals in a
+     * directory tree and writes them to a weights file, printing the
+     * error before and after and the time taken by each stage.
+     *
+     * @param args the arguments provided by the user.
+     */
+    public static void main(String[] args) {
+        String usage = "Usage: Tuner directory [-iterations n] [-rate r] [-threads n] [-maxTurns n] [-output file]";
+        if (args.length == 0) {
+            System.err.println(usage);
+            System.exit(1);
+        }
+        int iterations = 500;
+        double rate = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxTurns = 200;
+        String output = Evaluation.WEIGHTS_FILE;
+        try {
+            for (int i = 1; i + 1 < args.length; i += 2) {
+                if (args[i].equals("-iterations")) iterations = Integer.parseInt(args[i + 1]);
+                else if (args[i].equals("-rate")) rate = Double.parseDouble(args[i + 1]);
+                else if (args[i].equals("-threads")) threads = Integer.parseInt(args[i + 1]);
+                else if (args[i].equals("-maxTurns")) maxTurns = Integer.parseInt(args[i + 1]);
+                else if (args[i].equals("-output")) output = args[i + 1];
+            }
+        } catch (NumberFormatException e) {
+            System.err.println(usage);
+            System.exit(1);
+        }
+        try {
+            List<File> journals = new ArrayList<File>();
+            try (Stream<Path> paths = Files.walk(Paths.get(args[0]))) {
+                paths.filter(path -> path.getFileName().toString().endsWith(GameJournal.FILE_EXT))
+                     .forEach(path -> journals.add(path.toFile()));
+            }
+            long start = System.currentTimeMillis();
+            Tuner tuner = load(journals, maxTurns, threads);
+            long loaded = System.currentTimeMillis();
+            System.out.println("Games: " + tuner.getGames() + " Unreadable: " + tuner.getUnreadable()
+                               + " Unfinished: " + tuner.getUnfinished() + " Positions: " + tuner.size() + " Rows: " + tuner.getRows()
+                               + " in " + (loaded - start) + "ms");
+            int[] weights = new Evaluation().getWeights();
+            double scale = tuner.fitScale(toDoubles(weights));
+            System.out.println("Scale: " + scale + " Error: " + tuner.loss(toDoubles(weights), scale));
+            long tuning = System.currentTimeMillis();
+            int[] tuned = tuner.tune(weights, scale, iterations, rate);
+            long time = Math.max(1, System.currentTimeMillis() - tuning);
+            System.out.println("Error: " + tuner.loss(toDoubles(tuned), scale) + " after " + iterations + " passes in "
+                               + time + "ms, " + ((time * 1000) / iterations) + "us per pass");
+            System.out.println("Weights: " + Arrays.toString(tuned));
+            new Evaluation(tuned).save(new File(output));
+        } catch (Exception e) {
+            System.err.println("Error tuning evaluation weights. " + e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * The quiet positions of one game with their features packed into
+     * longs, and its result.
+     */
+    private static class Game {
+
+        private long[] positions = new long[64];
+        private int size;
+        private int result;
+
+        // Adds the features of a position.
+        // @param board the position.
+        // @param features the array to receive the features.
+        void add(BitBoard board, int[] features) {
+            Evaluation.getFeatures(board, features);
+            long key = 0;
+            for (int j = 0; j < Evaluation.SIZE; j++) {
+                key |= (long) ((features[j] + FEATURE_OFFSET) & FEATURE_MASK) << (j * FEATURE_BITS);
+            }
+            if (size == positions.length) positions = Arrays.copyOf(positions, size * 2);
+            positions[size++] = key;
+        }
+
+    }
+
+}
@@ -0,0 +1,86 @@
+package draughts;
+
+import java.util.*;
+
+/**
+ * A class holding the random keys used to hash positions.
+ * The key of a position is the exclusive or of the keys of its Pieces,
+ * so it can be updated incrementally as Pieces move, are captured or
+ * become kings.
+ */
+
+public final class Zobrist {
+
+    // The keys for each kind of Piece on each of the 32 squares.
+    private static final long[] RED_MEN = new long[32];
+    private static final long[] RED_KINGS = new long[32];
+    private static final long[] WHITE_MEN = new long[32];
+    private static final long[] WHITE_KINGS = new long[32];
+    // The keys for a multi-jump in progress from each square.
+    private static final long[] JUMPING = new long[32];
+
+    /**
+     * The key included when White is to move.
+     */
+    public static final long WHITE_TO_MOVE;
+
+    static {
+        // A fixed seed keeps keys, and anything stored by key, the same between runs.
+        Random random = new Random(0x5EEDL);
+        for (int i = 0; i < 32; i++) {
+            RED_MEN[i] = random.nextLong();
+            RED_KINGS[i] = random.nextLong();
+            WHITE_MEN[i] = random.nextLong();
+            WHITE_KINGS[i] = random.nextLong();
+            JUMPING[i] = random.nextLong();
+        }
+        WHITE_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() {}
+
+    /**
+     * Returns the key of a Piece on a square.
+     *
+     * @param colour the Colour of the Piece.
+     * @param king true if the Piece is a king.
+     * @param square the square index of the Piece.
+     * @return the key of a Piece on a square.
+     */
+    public static long piece(Colour colour, boolean king, int square) {
+        if (colour == Colour.Red) return king ? RED_KINGS[square] : RED_MEN[square];
+        return king ? WHITE_KINGS[square] : WHITE_MEN[square];
+    }
+
+    /**
+     * Returns the key of a multi-jump in progress from a square.
+     *
+     * @param square the square of the jumping Piece.
+     * @return the key of a multi-jump in progress from a square.
+     */
+    public static long jumping(int square) {
+        return JUMPING[square];
+    }
+
+    /**
+     * Returns the key of a position given as masks.
+     *
+     * @param currentPlayer the Colour of the player to move.
+     * @param red the mask of squares holding Red Pieces.
+     * @param white the mask of squares holding White Pieces.
+     * @param kings the mask of squares holding kings.
+     * @param jumping the square of a multi-jump in progress, or -1.
+     * @return the key of the position.
+     */
+    public static long hash(Colour currentPlayer, int red, int white, int kings, int jumping) {
+        long key = currentPlayer == Colour.White ? WHITE_TO_MOVE : 0;
+        for (int bits = red | white; bits != 0; bits &= bits - 1) {
+            int square = Integer.numberOfTrailingZeros(bits);
+            int bit = 1 << square;
+            key ^= piece((red & bit) != 0 ? Colour.Red : Colour.White, (kings & bit) != 0, square);
+        }
+        if (jumping >= 0) key ^= JUMPING[jumping];
+        return key;
+    }
+
+}